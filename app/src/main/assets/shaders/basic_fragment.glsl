@@ -2,13 +2,23 @@
 
 precision mediump float;
 
+// Blend mode variant (BlendModeManager constant), injected by ShaderLoader
+#ifndef BLEND_MODE
+#define BLEND_MODE 0
+#endif
+
+// Blend mode constants
+#define BLEND_ADD 0
+#define BLEND_MULTIPLY 1
+#define BLEND_ALPHA 2
+#define BLEND_XOR 3
+
 // Input from vertex shader
 in vec2 v_texCoord;
 
 // Uniforms
 uniform sampler2D u_texture;
 uniform vec4 u_color;
-uniform int u_blendMode;
 
 // Output color
 out vec4 fragColor;
@@ -18,23 +28,23 @@ void main() {
     vec4 texColor = texture(u_texture, v_texCoord);
     vec4 finalColor;
     
-    // Apply blend mode
-    if (u_blendMode == 0) {
-        // Additive blending
-        finalColor = texColor + u_color;
-    } else if (u_blendMode == 1) {
-        // Multiplicative blending
-        finalColor = texColor * u_color;
-    } else if (u_blendMode == 2) {
-        // Alpha blending
-        finalColor = mix(texColor, u_color, u_color.a);
-    } else if (u_blendMode == 3) {
-        // XOR blending (simulated)
-        finalColor = abs(texColor - u_color);
-    } else {
-        // Default: just texture
-        finalColor = texColor;
-    }
+    // Apply blend mode (resolved at compile time)
+#if BLEND_MODE == BLEND_ADD
+    // Additive blending
+    finalColor = texColor + u_color;
+#elif BLEND_MODE == BLEND_MULTIPLY
+    // Multiplicative blending
+    finalColor = texColor * u_color;
+#elif BLEND_MODE == BLEND_ALPHA
+    // Alpha blending
+    finalColor = mix(texColor, u_color, u_color.a);
+#elif BLEND_MODE == BLEND_XOR
+    // XOR blending (simulated)
+    finalColor = abs(texColor - u_color);
+#else
+    // Default: just texture
+    finalColor = texColor;
+#endif
     
     fragColor = finalColor;
 }
\ No newline at end of file
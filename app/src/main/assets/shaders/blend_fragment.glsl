@@ -2,75 +2,72 @@
 
 precision mediump float;
 
+// Blend mode variant (BlendModeManager constant), injected by ShaderLoader
+#ifndef BLEND_MODE
+#define BLEND_MODE 0
+#endif
+
+// Blend mode constants
+#define BLEND_ADD 0
+#define BLEND_MULTIPLY 1
+#define BLEND_ALPHA 2
+#define BLEND_XOR 3
+
 // Input from vertex shader
 in vec2 v_texCoord;
 
 // Uniforms
 uniform sampler2D u_texture;
 uniform vec4 u_color;
-uniform int u_blendMode;
 uniform float u_time;  // For potential animation effects
 
 // Output color
 out vec4 fragColor;
 
-// Blend mode constants
-const int BLEND_ADD = 0;
-const int BLEND_MULTIPLY = 1;
-const int BLEND_ALPHA = 2;
-const int BLEND_XOR = 3;
-
 void main() {
     // Sample texture
     vec4 texColor = texture(u_texture, v_texCoord);
     vec4 blendColor = u_color;
     vec4 finalColor;
     
-    // Calculate luminance to detect dark areas (for black background transparency)
-    float luminance = dot(texColor.rgb, vec3(0.299, 0.587, 0.114));
+    // Textures are luminance-keyed when loaded (TextureUtils.LUMINANCE_KEY): the black
+    // background adds nothing, so additive blending needs no discard. Opaque keyed
+    // textures (RGB ETC2, RGB565) carry no alpha, so every other mode drops keyed texels here.
     
-    // Apply different blend modes
-    if (u_blendMode == BLEND_ADD) {
-        // Additive blending: multiply texture with color first, then add in framebuffer
-        finalColor.rgb = texColor.rgb * blendColor.rgb;
-        finalColor.a = texColor.a * blendColor.a;
-        
-    } else if (u_blendMode == BLEND_MULTIPLY) {
-        // Multiplicative blending: multiply colors
-        finalColor = texColor * blendColor;
-        
-    } else if (u_blendMode == BLEND_ALPHA) {
-        // Alpha blending: preserve texture transparency
-        finalColor.rgb = texColor.rgb * blendColor.rgb;
-        finalColor.a = texColor.a * blendColor.a;
-        
-    } else if (u_blendMode == BLEND_XOR) {
-        // XOR-like blending: absolute difference
-        finalColor = abs(texColor - blendColor);
-        
-        // Enhance XOR effect with some color manipulation
-        finalColor.rgb = 1.0 - finalColor.rgb;
-        finalColor.a = max(texColor.a, blendColor.a);
-        
-    } else {
-        // Default: just texture with color tint
-        finalColor = texColor * blendColor;
-    }
+    // Apply blend mode (resolved at compile time)
+#if BLEND_MODE == BLEND_ADD
+    // Additive blending: multiply texture with color first, then add in framebuffer
+    finalColor.rgb = texColor.rgb * blendColor.rgb;
+    finalColor.a = texColor.a * blendColor.a;
     
-    // Discard dark pixels (black background) to create transparency
-    if (luminance < 0.1) {
-        discard;
-    }
+#elif BLEND_MODE == BLEND_MULTIPLY
+    // Multiplicative blending: multiply colors
+    finalColor = texColor * blendColor;
     
-    // Discard completely transparent pixels from texture alpha
-    if (texColor.a < 0.01) {
-        discard;
-    }
+#elif BLEND_MODE == BLEND_ALPHA
+    // Alpha blending: preserve texture transparency
+    finalColor.rgb = texColor.rgb * blendColor.rgb;
+    finalColor.a = texColor.a * blendColor.a;
+    
+#elif BLEND_MODE == BLEND_XOR
+    // XOR-like blending: absolute difference
+    finalColor = abs(texColor - blendColor);
     
-    // Also discard if final alpha is too low
-    if (finalColor.a < 0.01) {
+    // Enhance XOR effect with some color manipulation
+    finalColor.rgb = 1.0 - finalColor.rgb;
+    finalColor.a = max(texColor.a, blendColor.a);
+    
+#else
+    // Default: just texture with color tint
+    finalColor = texColor * blendColor;
+#endif
+    
+#if BLEND_MODE != BLEND_ADD
+    float luminance = dot(texColor.rgb, vec3(0.299, 0.587, 0.114));
+    if (luminance < 0.1 || texColor.a < 0.01 || finalColor.a < 0.01) {
         discard;
     }
+#endif
     
     fragColor = finalColor;
 }
\ No newline at end of file
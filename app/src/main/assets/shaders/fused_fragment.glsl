@@ -0,0 +1,82 @@
+#version 320 es
+
+// World positions need more than mediump precision
+precision highp float;
+
+// Number of garlands, injected by ShaderLoader
+#ifndef GARLAND_COUNT
+#define GARLAND_COUNT 2
+#endif
+
+// Input from vertex shader
+in vec2 v_ndc;
+
+// Uniforms
+uniform mat4 u_inverseViewProjection;
+
+// Garlands, drawn additively (same math as instanced_blend_fragment.glsl)
+uniform sampler2D u_texture;                         // texture index 0, unit 0
+uniform sampler2D u_texture1;                        // texture index 1, unit 1
+uniform mat4 u_garlandInverseModel[GARLAND_COUNT];   // world to unit quad
+uniform vec4 u_garlandColor[GARLAND_COUNT];
+uniform vec4 u_garlandUvTransform[GARLAND_COUNT];    // xy = scale, zw = offset
+uniform int u_garlandTexture[GARLAND_COUNT];         // texture index, -1 for none
+
+// Filters: bounds are min x, min y, max x, max y in world space
+uniform vec4 u_leftBounds;
+uniform vec4 u_leftColor;        // added
+uniform vec4 u_rightBounds;
+uniform vec4 u_multiplyColor;    // multiplied, then
+uniform vec4 u_invertColor;      // color * (1 - destination)
+
+// Output color
+out vec4 fragColor;
+
+// Half-open like rasterization: pixels on a shared edge belong to one side only
+bool insideBounds(vec2 position, vec4 bounds) {
+    return all(greaterThanEqual(position, bounds.xy)) && all(lessThan(position, bounds.zw));
+}
+
+void main() {
+    // Intersect the pixel's view ray with the z = 0 plane all quads lie in
+    vec4 near = u_inverseViewProjection * vec4(v_ndc, -1.0, 1.0);
+    vec4 far = u_inverseViewProjection * vec4(v_ndc, 1.0, 1.0);
+    near.xyz /= near.w;
+    far.xyz /= far.w;
+    vec2 world = mix(near.xyz, far.xyz, near.z / (near.z - far.z)).xy;
+
+    vec4 color = vec4(0.0);
+    for (int i = 0; i < GARLAND_COUNT; i++) {
+        vec2 local = (u_garlandInverseModel[i] * vec4(world, 0.0, 1.0)).xy;
+        // Unit quad texture coordinates: (-1, -1) is (0, 1), (1, 1) is (1, 0)
+        vec2 uv = vec2(local.x + 1.0, 1.0 - local.y) * 0.5;
+        uv = uv * u_garlandUvTransform[i].xy + u_garlandUvTransform[i].zw;
+
+        // Sampled outside the quad too: mip selection needs uniform control flow
+        vec4 texColor;
+        if (u_garlandTexture[i] == 0) {
+            texColor = texture(u_texture, uv);
+        } else if (u_garlandTexture[i] == 1) {
+            texColor = texture(u_texture1, uv);
+        } else {
+            texColor = vec4(1.0);
+        }
+        // Keyed texels are transparent black and add nothing; outside the quad nothing is drawn
+        if (all(lessThanEqual(abs(local), vec2(1.0)))) {
+            color += texColor * u_garlandColor[i];
+        }
+    }
+
+    if (insideBounds(world, u_leftBounds)) {
+        color += u_leftColor;
+    }
+    // Additive blending saturates; sums of non-negative terms clamp once
+    color = min(color, 1.0);
+
+    if (insideBounds(world, u_rightBounds)) {
+        color *= u_multiplyColor;
+        color = u_invertColor * (1.0 - color);
+    }
+
+    fragColor = color;
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+#version 320 es
+
+// Full-screen triangle generated from gl_VertexID; no vertex attributes
+
+// Output to fragment shader
+out vec2 v_ndc;
+
+void main() {
+    // Vertices (-1, -1), (3, -1), (-1, 3) cover the whole viewport
+    vec2 position = vec2(float((gl_VertexID & 1) * 4 - 1), float((gl_VertexID & 2) * 2 - 1));
+    gl_Position = vec4(position, 0.0, 1.0);
+    v_ndc = position;
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+#version 320 es
+
+precision mediump float;
+
+// Blend mode variant (BlendModeManager constant), injected by ShaderLoader
+#ifndef BLEND_MODE
+#define BLEND_MODE 0
+#endif
+
+// Blend mode constants
+#define BLEND_ADD 0
+#define BLEND_MULTIPLY 1
+#define BLEND_ALPHA 2
+#define BLEND_XOR 3
+
+// Input from vertex shader
+in vec2 v_texCoord;
+in vec4 v_color;
+flat in int v_textureIndex;
+
+// Uniforms
+uniform sampler2D u_texture;   // texture index 0, unit 0
+uniform sampler2D u_texture1;  // texture index 1, unit 1
+uniform vec4 u_color;          // tint applied to the whole batch
+
+// Output color
+out vec4 fragColor;
+
+void main() {
+    // Select the instance texture; sampler arrays may not be indexed per instance
+    vec4 texColor;
+    if (v_textureIndex == 0) {
+        texColor = texture(u_texture, v_texCoord);
+    } else if (v_textureIndex == 1) {
+        texColor = texture(u_texture1, v_texCoord);
+    } else {
+        texColor = vec4(1.0);
+    }
+    vec4 blendColor = v_color * u_color;
+    vec4 finalColor;
+    
+    // Textures are luminance-keyed when loaded (TextureUtils.LUMINANCE_KEY): the black
+    // background adds nothing, so additive blending needs no discard. Opaque keyed
+    // textures (RGB ETC2, RGB565) carry no alpha, so every other mode drops keyed texels here.
+    
+    // Apply blend mode, resolved at compile time (same as blend_fragment.glsl)
+#if BLEND_MODE == BLEND_ADD || BLEND_MODE == BLEND_ALPHA
+    finalColor.rgb = texColor.rgb * blendColor.rgb;
+    finalColor.a = texColor.a * blendColor.a;
+    
+#elif BLEND_MODE == BLEND_XOR
+    finalColor = abs(texColor - blendColor);
+    finalColor.rgb = 1.0 - finalColor.rgb;
+    finalColor.a = max(texColor.a, blendColor.a);
+    
+#else
+    // Multiply and default: texture with color tint
+    finalColor = texColor * blendColor;
+#endif
+    
+#if BLEND_MODE != BLEND_ADD
+    float luminance = dot(texColor.rgb, vec3(0.299, 0.587, 0.114));
+    if (luminance < 0.1 || texColor.a < 0.01 || finalColor.a < 0.01) {
+        discard;
+    }
+#endif
+    
+    fragColor = finalColor;
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+#version 320 es
+
+// Vertex attributes (shared unit quad)
+layout(location = 0) in vec2 a_position;
+layout(location = 1) in vec2 a_texCoord;
+
+// Instance attributes (one set per garland, divisor 1)
+layout(location = 2) in mat4 i_modelMatrix;   // occupies locations 2-5
+layout(location = 6) in vec4 i_color;
+layout(location = 7) in float i_textureIndex;
+layout(location = 8) in vec4 i_uvTransform;   // xy = scale, zw = offset (mirrored variants)
+
+// Uniforms
+uniform mat4 u_mvpMatrix;  // projection * view, model comes per instance
+
+// Output to fragment shader
+out vec2 v_texCoord;
+out vec4 v_color;
+flat out int v_textureIndex;
+
+void main() {
+    // Transform vertex position using the per-instance model matrix
+    gl_Position = u_mvpMatrix * i_modelMatrix * vec4(a_position, 0.0, 1.0);
+    
+    // Pass texture coordinates and instance data to fragment shader
+    v_texCoord = a_texCoord * i_uvTransform.xy + i_uvTransform.zw;
+    v_color = i_color;
+    v_textureIndex = int(i_textureIndex);
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+#version 320 es
+
+// Framebuffer fetch extension, injected by ShaderLoader (BlendModeManager.getFramebufferFetchDefine())
+#if defined(FRAMEBUFFER_FETCH_EXT)
+#extension GL_EXT_shader_framebuffer_fetch : require
+#elif defined(FRAMEBUFFER_FETCH_ARM)
+#extension GL_ARM_shader_framebuffer_fetch : require
+#endif
+
+precision mediump float;
+
+// Input from vertex shader
+in vec2 v_texCoord;
+
+// Uniforms
+uniform vec4 u_multiplyColor;  // first pass: GL_ZERO, GL_SRC_COLOR
+uniform vec4 u_invertColor;    // second pass: GL_ONE_MINUS_DST_COLOR, GL_ZERO
+
+// Output color; with the EXT extension it holds the destination on entry
+#if defined(FRAMEBUFFER_FETCH_EXT)
+inout vec4 fragColor;
+#else
+out vec4 fragColor;
+#endif
+
+void main() {
+#if defined(FRAMEBUFFER_FETCH_EXT)
+    vec4 destination = fragColor;
+#elif defined(FRAMEBUFFER_FETCH_ARM)
+    vec4 destination = gl_LastFragColorARM;
+#else
+    vec4 destination = vec4(0.0);  // never compiled without an extension
+#endif
+
+    // Both fixed-function passes in one: multiply, then invert
+    fragColor = u_invertColor * (1.0 - destination * u_multiplyColor);
+}
\ No newline at end of file
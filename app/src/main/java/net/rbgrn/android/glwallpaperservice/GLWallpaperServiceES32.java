@@ -12,21 +12,41 @@
  *     android.opengl.EGL14 in this legacy EGL10 code path.
  *   • Added import for android.opengl.GLES32 so renderers can call GLES32.*
  *     even when they are invoked from the same engine.
+ *   • Added RENDERMODE_VSYNC (see "MOD VSYNC"): the GL thread is released by
+ *     Choreographer frame callbacks instead of sleeping a fixed 10 ms.
+ *   • Added an optional frame-rate cap (see "MOD FPS") that paces the GL
+ *     thread and is forwarded to the compositor via Surface.setFrameRate.
+ *   • Added setPreserveEGLContextOnPause (see "MOD PRESERVE") and the
+ *     ContextAwareRenderer callback telling renderers whether their GL
+ *     objects survived.
+ *   • Added SharedContextFactory (see "MOD SHARE") placing the contexts of
+ *     all engines in one EGL share group.
+ *   • queueEvent uses a lock-free queue (see "MOD EVENTS"); producers only
+ *     touch the thread monitor when the GL thread is parked.
+ *   • Added FrameTimingRenderer (see "MOD TIMING") reporting how long
+ *     onDrawFrame and eglSwapBuffers took.
  *
- * No other functional changes have been introduced; the threading model
- * and the Engine / GLThread / Renderer contracts remain identical.
+ * Apart from the additions above the threading model and the
+ * Engine / GLThread / Renderer contracts remain identical.
  */
 
 package net.rbgrn.android.glwallpaperservice;
 
 import android.opengl.GLES32;       // MOD ES3.2 : renderer side utilities
 import android.opengl.GLSurfaceView;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.service.wallpaper.WallpaperService;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Surface;
 import android.view.SurfaceHolder;
 
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGL11;
@@ -52,6 +72,7 @@ public class GLWallpaperServiceES32 extends WallpaperService {
     public class GLEngine extends Engine {
         public static final int RENDERMODE_WHEN_DIRTY      = 0;
         public static final int RENDERMODE_CONTINUOUSLY    = 1;
+        public static final int RENDERMODE_VSYNC           = 2;   // MOD VSYNC
 
         private GLThread                        mGLThread;
         private GLSurfaceView.EGLConfigChooser  mEGLConfigChooser;
@@ -59,6 +80,8 @@ public class GLWallpaperServiceES32 extends WallpaperService {
         private GLSurfaceView.EGLWindowSurfaceFactory mEGLWindowSurfaceFactory;
         private GLSurfaceView.GLWrapper         mGLWrapper;
         private int                             mDebugFlags;
+        private float                           mMaxFrameRate;   // MOD FPS : 0 = uncapped
+        private boolean                         mPreserveEGLContextOnPause;
 
         public GLEngine() {
             super();
@@ -88,6 +111,7 @@ public class GLWallpaperServiceES32 extends WallpaperService {
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             mGLThread.onWindowResize(width, height);
+            applyFrameRateHint(holder);
             super.onSurfaceChanged(holder, format, width, height);
         }
 
@@ -95,6 +119,7 @@ public class GLWallpaperServiceES32 extends WallpaperService {
         public void onSurfaceCreated(SurfaceHolder holder) {
             Log.d(TAG, "onSurfaceCreated()");
             mGLThread.surfaceCreated(holder);
+            applyFrameRateHint(holder);
             super.onSurfaceCreated(holder);
         }
 
@@ -136,6 +161,7 @@ public class GLWallpaperServiceES32 extends WallpaperService {
                     mEGLContextFactory,
                     mEGLWindowSurfaceFactory,
                     mGLWrapper);
+            mGLThread.setPreserveEGLContextOnPause(mPreserveEGLContextOnPause);
             mGLThread.start();
         }
 
@@ -172,6 +198,73 @@ public class GLWallpaperServiceES32 extends WallpaperService {
             return mGLThread.getRenderMode();
         }
 
+        /* MOD VSYNC : render once every {@code frames} display refreshes
+         * while in RENDERMODE_VSYNC (1 = every vsync).                    */
+        public void setVsyncInterval(int frames) {
+            mGLThread.setVsyncInterval(frames);
+        }
+
+        public int getVsyncInterval() {
+            return mGLThread.getVsyncInterval();
+        }
+
+        /* MOD VSYNC : smoothed interval between rendered frames, 0 until
+         * two frames have been drawn.                                     */
+        public long getFrameIntervalNanos() {
+            return mGLThread.getFrameIntervalNanos();
+        }
+
+        public float getFrameRate() {
+            long interval = getFrameIntervalNanos();
+            return interval > 0 ? 1e9f / interval : 0f;
+        }
+
+        /* MOD FPS : caps the rate at which frames are drawn; 0 removes the
+         * cap. On API 30+ the cap is also passed to the compositor so the
+         * panel may lower its refresh rate.                               */
+        public void setMaxFrameRate(float framesPerSecond) {
+            if (framesPerSecond < 0f) {
+                throw new IllegalArgumentException("framesPerSecond");
+            }
+            mMaxFrameRate = framesPerSecond;
+            mGLThread.setMaxFrameRate(framesPerSecond);
+            applyFrameRateHint(getSurfaceHolder());
+        }
+
+        public float getMaxFrameRate() {
+            return mMaxFrameRate;
+        }
+
+        private void applyFrameRateHint(SurfaceHolder holder) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R || holder == null) {
+                return;
+            }
+            Surface surface = holder.getSurface();
+            if (surface == null || !surface.isValid()) {
+                return;
+            }
+            try {
+                surface.setFrameRate(mMaxFrameRate, Surface.FRAME_RATE_COMPATIBILITY_DEFAULT);
+            } catch (IllegalStateException e) {
+                // surface was released between the validity check and the call
+                Log.w(TAG, "setFrameRate failed", e);
+            }
+        }
+
+        /* MOD PRESERVE : keep the EGL surface and context while invisible so
+         * resuming only needs a swap, like GLSurfaceView's option of the
+         * same name. Costs the surface's buffers while paused.            */
+        public void setPreserveEGLContextOnPause(boolean preserveOnPause) {
+            mPreserveEGLContextOnPause = preserveOnPause;
+            if (mGLThread != null) {
+                mGLThread.setPreserveEGLContextOnPause(preserveOnPause);
+            }
+        }
+
+        public boolean getPreserveEGLContextOnPause() {
+            return mPreserveEGLContextOnPause;
+        }
+
         public void requestRender() {
             mGLThread.requestRender();
         }
@@ -202,6 +295,28 @@ public class GLWallpaperServiceES32 extends WallpaperService {
     public interface Renderer extends GLSurfaceView.Renderer {
     }
 
+    /**
+     * MOD PRESERVE : renderers implementing this receive the three-argument
+     * onSurfaceCreated instead of the plain one. contextPreserved is true when
+     * the EGL context (and every GL object created in it) survived since the
+     * previous call, so only surface-dependent state needs to be rebuilt.
+     */
+    public interface ContextAwareRenderer extends GLSurfaceView.Renderer {
+        void onSurfaceCreated(GL10 gl, EGLConfig config, boolean contextPreserved);
+
+        /* MOD SHARE : called on the GL thread right before the EGL context is
+         * destroyed. GL objects may only be deleted if contextCurrent.      */
+        void onContextDestroying(boolean contextCurrent);
+    }
+
+    /**
+     * MOD TIMING : renderers implementing this are told, after every swap,
+     * how long onDrawFrame and eglSwapBuffers took on the GL thread.
+     */
+    public interface FrameTimingRenderer extends GLSurfaceView.Renderer {
+        void onFrameTiming(long drawNanos, long swapNanos);
+    }
+
     /* ------------------------------------------------------------------ */
     /* Log helper                                                          */
 
@@ -257,6 +372,57 @@ public class GLWallpaperServiceES32 extends WallpaperService {
         }
     }
 
+    /**
+     * MOD SHARE : context factory placing every context it creates in one EGL
+     * share group, so textures and buffers created by one engine are usable by
+     * every engine using the same factory (VAOs and FBOs stay per-context, and
+     * programs are linked per renderer since their uniforms are shared state). The listener is told when the last context is destroyed,
+     * i.e. when all shared objects are gone. It runs with the factory locked,
+     * so no context of a new share group is created before it returns.
+     */
+    public static class SharedContextFactory implements GLSurfaceView.EGLContextFactory {
+        public interface ShareGroupListener {
+            void onShareGroupDestroyed();
+        }
+
+        private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+        private final ArrayList<EGLContext> mContexts = new ArrayList<EGLContext>();
+        private final ShareGroupListener mListener;
+
+        public SharedContextFactory(ShareGroupListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config) {
+            int[] attrib_list = {
+                    EGL_CONTEXT_CLIENT_VERSION, 3,   // ES 3.x
+                    EGL10.EGL_NONE
+            };
+            synchronized (mContexts) {
+                EGLContext shareContext = mContexts.isEmpty() ? EGL10.EGL_NO_CONTEXT : mContexts.get(0);
+                EGLContext context = egl.eglCreateContext(display, config, shareContext, attrib_list);
+                if (context != null && context != EGL10.EGL_NO_CONTEXT) {
+                    mContexts.add(context);
+                }
+                return context;
+            }
+        }
+
+        @Override
+        public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+            synchronized (mContexts) {
+                egl.eglDestroyContext(display, context);
+                mContexts.remove(context);
+                // Still locked: a new group's engine must not fill the pool before it is reset
+                if (mContexts.isEmpty() && mListener != null) {
+                    mListener.onShareGroupDestroyed();
+                }
+            }
+        }
+    }
+
     @Deprecated
     interface EGLWindowSurfaceFactory extends GLSurfaceView.EGLWindowSurfaceFactory {
     }
@@ -313,7 +479,12 @@ public class GLWallpaperServiceES32 extends WallpaperService {
             this.mGLWrapper = wrapper;
         }
 
-        public void start() {
+        /**
+         * @return true if a new EGL context had to be created, i.e. any GL
+         *         objects from a previous context are gone
+         */
+        public boolean start() {
+            boolean createdContext = false;
             if (mEgl == null) {
                 mEgl = (EGL10) EGLContext.getEGL();
             }
@@ -333,9 +504,11 @@ public class GLWallpaperServiceES32 extends WallpaperService {
                 if (mEglContext == null || mEglContext == EGL10.EGL_NO_CONTEXT) {
                     throw new RuntimeException("createContext failed");
                 }
+                createdContext = true;
             }
 
             mEglSurface = null;
+            return createdContext;
         }
 
         public GL createSurface(SurfaceHolder holder) {
@@ -375,6 +548,10 @@ public class GLWallpaperServiceES32 extends WallpaperService {
             }
         }
 
+        public boolean hasContext() {
+            return mEglContext != null;
+        }
+
         public void finish() {
             if (mEglContext != null) {
                 mEGLContextFactory.destroyContext(mEgl, mEglDisplay, mEglContext);
@@ -383,6 +560,8 @@ public class GLWallpaperServiceES32 extends WallpaperService {
             if (mEglDisplay != null) {
                 mEgl.eglTerminate(mEglDisplay);
                 mEglDisplay = null;
+                // a terminated display must be initialised again by start()
+                mEglConfig = null;
             }
         }
     }
@@ -394,6 +573,7 @@ public class GLWallpaperServiceES32 extends WallpaperService {
         private final static boolean LOG_THREADS = false;
         public final static int DEBUG_CHECK_GL_ERROR = 1;
         public final static int DEBUG_LOG_GL_CALLS = 2;
+        private final static int MAX_EVENTS_PER_ITERATION = 64;   // MOD EVENTS
 
         private final GLThreadManager sGLThreadManager = new GLThreadManager();
         private GLThread mEglOwner;
@@ -415,10 +595,24 @@ public class GLWallpaperServiceES32 extends WallpaperService {
         private int mHeight;
         private int mRenderMode;
         private boolean mRequestRender;
-        private boolean mEventsWaiting;
+        private boolean mPreserveEGLContextOnPause;   // MOD PRESERVE
+
+        // MOD VSYNC : guarded by sGLThreadManager
+        private int mVsyncInterval = 1;
+        private long mMinFrameIntervalNanos;    // MOD FPS : 0 = uncapped
+        private boolean mVsyncPending;
+        private long mVsyncFrameTimeNanos;
+        private final VsyncScheduler mVsyncScheduler = new VsyncScheduler();
+
+        // Written by the GL thread only, read from any thread
+        private volatile long mFrameIntervalNanos;
+        private long mLastFrameTimeNanos;
 
         private GLSurfaceView.Renderer mRenderer;
-        private ArrayList<Runnable> mEventQueue = new ArrayList<Runnable>();
+        // MOD EVENTS : multi-producer queue drained by the GL thread only.
+        // mParked is set while the GL thread is (about to be) in wait().
+        private final ConcurrentLinkedQueue<Runnable> mEventQueue = new ConcurrentLinkedQueue<Runnable>();
+        private volatile boolean mParked;
         private EglHelper mEglHelper;
 
         GLThread(GLSurfaceView.Renderer renderer, GLSurfaceView.EGLConfigChooser chooser, GLSurfaceView.EGLContextFactory contextFactory,
@@ -448,6 +642,7 @@ public class GLWallpaperServiceES32 extends WallpaperService {
             } catch (InterruptedException e) {
                 // fall thru and exit normally
             } finally {
+                mVsyncScheduler.quit();
                 sGLThreadManager.threadExiting(this);
             }
         }
@@ -466,17 +661,25 @@ public class GLWallpaperServiceES32 extends WallpaperService {
                 GL10 gl = null;
                 boolean tellRendererSurfaceCreated = true;
                 boolean tellRendererSurfaceChanged = true;
+                boolean contextPreserved = false;
+                // MOD EVENTS : kept across iterations that only run events, so an
+                // EGL start is reported with the next frame however events interleave
+                boolean needStart = false;
+                boolean createdContext = false;
 
                 while (!isDone()) {
+                    runQueuedEvents();
+
                     int w = 0;
                     int h = 0;
                     boolean changed = false;
-                    boolean needStart = false;
                     boolean eventsWaiting = false;
+                    boolean vsyncFrame = false;
+                    long frameTimeNanos = 0;
 
                     synchronized (sGLThreadManager) {
                         while (true) {
-                            if (mPaused) {
+                            if (mPaused && !mPreserveEGLContextOnPause) {
                                 stopEglLocked();
                             }
                             if (!mHasSurface) {
@@ -489,7 +692,7 @@ public class GLWallpaperServiceES32 extends WallpaperService {
                                 if (!mHaveEgl) {
                                     if (sGLThreadManager.tryAcquireEglSurface(this)) {
                                         mHaveEgl = true;
-                                        mEglHelper.start();
+                                        createdContext |= mEglHelper.start();
                                         mRequestRender = true;
                                         needStart = true;
                                     }
@@ -500,19 +703,22 @@ public class GLWallpaperServiceES32 extends WallpaperService {
                                 return;
                             }
 
-                            if (mEventsWaiting) {
-                                eventsWaiting = true;
-                                mEventsWaiting = false;
-                                break;
+                            boolean vsyncMode = mRenderMode == GLWallpaperServiceES32.GLEngine.RENDERMODE_VSYNC;
+                            if (vsyncMode && wantsVsyncLocked()) {
+                                mVsyncScheduler.armLocked();
                             }
 
                             if ((!mPaused) && mHasSurface && mHaveEgl && (mWidth > 0) && (mHeight > 0)
-                                    && (mRequestRender || (mRenderMode == GLWallpaperServiceES32.GLEngine.RENDERMODE_CONTINUOUSLY))) {
+                                    && (vsyncMode ? mVsyncPending
+                                        : (mRequestRender || (mRenderMode == GLWallpaperServiceES32.GLEngine.RENDERMODE_CONTINUOUSLY)))) {
                                 changed = mSizeChanged;
                                 w = mWidth;
                                 h = mHeight;
                                 mSizeChanged = false;
                                 mRequestRender = false;
+                                vsyncFrame = vsyncMode;
+                                frameTimeNanos = vsyncMode ? mVsyncFrameTimeNanos : System.nanoTime();
+                                mVsyncPending = false;
                                 if (mHasSurface && mWaitingForSurface) {
                                     changed = true;
                                     mWaitingForSurface = false;
@@ -521,34 +727,50 @@ public class GLWallpaperServiceES32 extends WallpaperService {
                                 break;
                             }
 
+                            // MOD EVENTS : no frame is ready, so pending events run now; a
+                            // ready frame is drawn first and the events drained after it.
+                            // Publish mParked before the final queue check;
+                            // a producer that offers after this check sees mParked and
+                            // notifies, which cannot happen before wait() releases us.
+                            mParked = true;
+                            if (!mEventQueue.isEmpty()) {
+                                mParked = false;
+                                eventsWaiting = true;
+                                break;
+                            }
                             if (LOG_THREADS) {
                                 Log.i("GLThread", "waiting tid=" + getId());
                             }
-                            sGLThreadManager.wait();
+                            try {
+                                sGLThreadManager.wait();
+                            } finally {
+                                mParked = false;
+                            }
                         }
                     }
 
                     if (eventsWaiting) {
-                        Runnable r;
-                        while ((r = getEvent()) != null) {
-                            r.run();
-                            if (isDone()) {
-                                return;
-                            }
-                        }
+                        // drained at the top of the loop, outside the monitor
                         continue;
                     }
 
                     if (needStart) {
                         tellRendererSurfaceCreated = true;
+                        contextPreserved = !createdContext;
                         changed = true;
+                        needStart = false;
+                        createdContext = false;
                     }
                     if (changed) {
                         gl = (GL10) mEglHelper.createSurface(mHolder);
                         tellRendererSurfaceChanged = true;
                     }
                     if (tellRendererSurfaceCreated) {
-                        mRenderer.onSurfaceCreated(gl, mEglHelper.mEglConfig);
+                        if (mRenderer instanceof ContextAwareRenderer) {
+                            ((ContextAwareRenderer) mRenderer).onSurfaceCreated(gl, mEglHelper.mEglConfig, contextPreserved);
+                        } else {
+                            mRenderer.onSurfaceCreated(gl, mEglHelper.mEglConfig);
+                        }
                         tellRendererSurfaceCreated = false;
                     }
                     if (tellRendererSurfaceChanged) {
@@ -556,16 +778,44 @@ public class GLWallpaperServiceES32 extends WallpaperService {
                         tellRendererSurfaceChanged = false;
                     }
                     if ((w > 0) && (h > 0)) {
+                        recordFrameTime(frameTimeNanos);
+                        long drawStart = System.nanoTime();
                         mRenderer.onDrawFrame(gl);
-                        mEglHelper.swap();
-                        Thread.sleep(10);
+                        long swapStart = System.nanoTime();
+                        boolean swapped = mEglHelper.swap();
+                        if (mRenderer instanceof FrameTimingRenderer) {
+                            ((FrameTimingRenderer) mRenderer).onFrameTiming(swapStart - drawStart, System.nanoTime() - swapStart);
+                        }
+                        if (!swapped) {
+                            // MOD PRESERVE : context lost, drop it so the next
+                            // start() creates a fresh one and the renderer reloads
+                            Log.w("GLThread", "EGL context lost tid=" + getId());
+                            destroyEgl(false);
+                        }
+                        if (!vsyncFrame) {
+                            sleepUntilNextFrame(frameTimeNanos);
+                        }
                     }
                 }
             } finally {
+                boolean contextCurrent;
                 synchronized (sGLThreadManager) {
-                    stopEglLocked();
-                    mEglHelper.finish();
+                    contextCurrent = mHaveEgl;
                 }
+                destroyEgl(contextCurrent);
+            }
+        }
+
+        /* MOD SHARE : lets the renderer release its share of the pooled objects
+         * before the surface and context go away. contextCurrent is false when
+         * the context was lost, in which case GL objects must not be touched. */
+        private void destroyEgl(boolean contextCurrent) {
+            if (mRenderer instanceof ContextAwareRenderer && mEglHelper.hasContext()) {
+                ((ContextAwareRenderer) mRenderer).onContextDestroying(contextCurrent);
+            }
+            synchronized (sGLThreadManager) {
+                stopEglLocked();
+                mEglHelper.finish();
             }
         }
 
@@ -575,18 +825,85 @@ public class GLWallpaperServiceES32 extends WallpaperService {
             }
         }
 
+        /* MOD VSYNC : vsync callbacks are only wanted while frames can be drawn */
+        private boolean wantsVsyncLocked() {
+            return mRenderMode == GLWallpaperServiceES32.GLEngine.RENDERMODE_VSYNC
+                    && !mPaused && mHasSurface && !mDone;
+        }
+
+        /* MOD FPS : without a cap keep the original 10 ms breather, with a cap
+         * sleep off whatever is left of the frame interval.                 */
+        private void sleepUntilNextFrame(long frameStartNanos) throws InterruptedException {
+            long minInterval;
+            synchronized (sGLThreadManager) {
+                minInterval = mMinFrameIntervalNanos;
+            }
+            if (minInterval == 0) {
+                Thread.sleep(10);
+                return;
+            }
+            long remainingNanos = frameStartNanos + minInterval - System.nanoTime();
+            if (remainingNanos > 0) {
+                Thread.sleep(remainingNanos / 1000000L, (int) (remainingNanos % 1000000L));
+            }
+        }
+
+        private void recordFrameTime(long frameTimeNanos) {
+            long interval = frameTimeNanos - mLastFrameTimeNanos;
+            // Gaps longer than a second are pauses, not frame cadence
+            if (mLastFrameTimeNanos != 0 && interval > 0 && interval < 1000000000L) {
+                long smoothed = mFrameIntervalNanos;
+                mFrameIntervalNanos = smoothed == 0 ? interval : smoothed + (interval - smoothed) / 8;
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+        }
+
         public void setRenderMode(int renderMode) {
-            if (!((GLWallpaperServiceES32.GLEngine.RENDERMODE_WHEN_DIRTY <= renderMode) && (renderMode <= GLWallpaperServiceES32.GLEngine.RENDERMODE_CONTINUOUSLY))) {
+            if (!((GLWallpaperServiceES32.GLEngine.RENDERMODE_WHEN_DIRTY <= renderMode) && (renderMode <= GLWallpaperServiceES32.GLEngine.RENDERMODE_VSYNC))) {
                 throw new IllegalArgumentException("renderMode");
             }
             synchronized (sGLThreadManager) {
                 mRenderMode = renderMode;
-                if (renderMode == GLWallpaperServiceES32.GLEngine.RENDERMODE_CONTINUOUSLY) {
+                mVsyncPending = false;
+                if (renderMode != GLWallpaperServiceES32.GLEngine.RENDERMODE_WHEN_DIRTY) {
                     sGLThreadManager.notifyAll();
                 }
             }
         }
 
+        public void setVsyncInterval(int frames) {
+            if (frames < 1) {
+                throw new IllegalArgumentException("frames");
+            }
+            synchronized (sGLThreadManager) {
+                mVsyncInterval = frames;
+            }
+        }
+
+        public int getVsyncInterval() {
+            synchronized (sGLThreadManager) {
+                return mVsyncInterval;
+            }
+        }
+
+        public void setMaxFrameRate(float framesPerSecond) {
+            synchronized (sGLThreadManager) {
+                mMinFrameIntervalNanos = framesPerSecond > 0f ? (long) (1e9 / framesPerSecond) : 0;
+                sGLThreadManager.notifyAll();
+            }
+        }
+
+        public long getFrameIntervalNanos() {
+            return mFrameIntervalNanos;
+        }
+
+        public void setPreserveEGLContextOnPause(boolean preserveOnPause) {
+            synchronized (sGLThreadManager) {
+                mPreserveEGLContextOnPause = preserveOnPause;
+                sGLThreadManager.notifyAll();
+            }
+        }
+
         public int getRenderMode() {
             synchronized (sGLThreadManager) {
                 return mRenderMode;
@@ -664,23 +981,119 @@ public class GLWallpaperServiceES32 extends WallpaperService {
             }
         }
 
+        /* MOD EVENTS : lock-free enqueue. While the GL thread is busy the event
+         * is picked up at the top of its next loop iteration, so the monitor is
+         * only taken to wake a parked thread.                              */
         public void queueEvent(Runnable r) {
-            synchronized (this) {
-                mEventQueue.add(r);
+            if (r == null) {
+                throw new IllegalArgumentException("r must not be null");
+            }
+            mEventQueue.offer(r);
+            if (mParked) {
                 synchronized (sGLThreadManager) {
-                    mEventsWaiting = true;
                     sGLThreadManager.notifyAll();
                 }
             }
         }
 
-        private Runnable getEvent() {
-            synchronized (this) {
-                if (mEventQueue.size() > 0) {
-                    return mEventQueue.remove(0);
+        /* Runs up to MAX_EVENTS_PER_ITERATION events; the rest wait for the
+         * next iteration so a flood of events cannot starve frame rendering. */
+        private void runQueuedEvents() {
+            Runnable r;
+            for (int i = 0; i < MAX_EVENTS_PER_ITERATION && (r = mEventQueue.poll()) != null; i++) {
+                r.run();
+            }
+        }
+
+        /**
+         * MOD VSYNC : receives Choreographer callbacks on a private looper thread
+         * (the GL thread has no Looper) and releases the GL thread once every
+         * mVsyncInterval display frames. Callbacks stop being re-posted as soon
+         * as the thread is paused, loses its surface or leaves vsync mode.
+         *
+         * MOD FPS : when a frame-rate cap is set a frame is only released at the
+         * first vsync on or after its deadline (less half a vsync of slack), and
+         * deadlines advance by the cap interval so e.g. 24 fps on a 60 Hz panel
+         * alternates 2 and 3 vsyncs per frame instead of rounding up to 30 fps.
+         */
+        private class VsyncScheduler implements Choreographer.FrameCallback, Runnable {
+            private HandlerThread mLooperThread;
+            private Handler mHandler;
+            private Choreographer mChoreographer;   // looper thread only
+            private boolean mArmed;                 // guarded by sGLThreadManager
+            private int mVsyncCount;                // guarded by sGLThreadManager
+            private long mLastVsyncNanos;           // guarded by sGLThreadManager
+            private long mVsyncPeriodNanos;         // guarded by sGLThreadManager
+            private long mNextDeadlineNanos;        // guarded by sGLThreadManager
+
+            void armLocked() {
+                if (mArmed) {
+                    return;
+                }
+                if (mHandler == null) {
+                    mLooperThread = new HandlerThread("GLVsync " + getId(), Process.THREAD_PRIORITY_DISPLAY);
+                    mLooperThread.start();
+                    mHandler = new Handler(mLooperThread.getLooper());
+                }
+                mArmed = true;
+                mVsyncCount = 0;
+                mLastVsyncNanos = 0;
+                mNextDeadlineNanos = 0;
+                mHandler.post(this);
+            }
+
+            @Override
+            public void run() {
+                if (mChoreographer == null) {
+                    mChoreographer = Choreographer.getInstance();
+                }
+                mChoreographer.postFrameCallback(this);
+            }
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                synchronized (sGLThreadManager) {
+                    if (!wantsVsyncLocked()) {
+                        mArmed = false;
+                        return;
+                    }
+                    long period = frameTimeNanos - mLastVsyncNanos;
+                    if (mLastVsyncNanos != 0 && period > 0) {
+                        mVsyncPeriodNanos = mVsyncPeriodNanos == 0
+                                ? period : mVsyncPeriodNanos + (period - mVsyncPeriodNanos) / 8;
+                    }
+                    mLastVsyncNanos = frameTimeNanos;
+
+                    if (++mVsyncCount >= mVsyncInterval
+                            && frameTimeNanos >= mNextDeadlineNanos - mVsyncPeriodNanos / 2) {
+                        mVsyncCount = 0;
+                        mVsyncPending = true;
+                        mVsyncFrameTimeNanos = frameTimeNanos;
+                        advanceDeadlineLocked(frameTimeNanos);
+                        sGLThreadManager.notifyAll();
+                    }
+                }
+                mChoreographer.postFrameCallback(this);
+            }
+
+            private void advanceDeadlineLocked(long frameTimeNanos) {
+                long interval = mMinFrameIntervalNanos;
+                if (interval == 0) {
+                    mNextDeadlineNanos = 0;
+                    return;
+                }
+                mNextDeadlineNanos += interval;
+                // Resynchronise after a stall rather than bursting to catch up
+                if (mNextDeadlineNanos < frameTimeNanos) {
+                    mNextDeadlineNanos = frameTimeNanos + interval;
+                }
+            }
+
+            void quit() {
+                if (mLooperThread != null) {
+                    mLooperThread.quitSafely();
                 }
             }
-            return null;
         }
 
         private class GLThreadManager {
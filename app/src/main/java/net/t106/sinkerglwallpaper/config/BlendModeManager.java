@@ -1,10 +1,16 @@
 package net.t106.sinkerglwallpaper.config;
 
 import android.opengl.GLES32;
+import net.t106.sinkerglwallpaper.opengl.utils.GLStateCache;
 
 /**
  * Centralized blend mode management for OpenGL ES 3.2
  * Eliminates duplicated blend function code across filter classes
+ *
+ * Fixed-function modes set glBlendFunc. Programmable modes (see
+ * isProgrammable()) are computed by a shader that reads the destination
+ * through framebuffer fetch; they turn fixed-function blending off and
+ * are only usable where getFramebufferFetchDefine() is not null.
  */
 public class BlendModeManager {
     
@@ -15,51 +21,100 @@ public class BlendModeManager {
     public static final int BLEND_XOR = 3;
     public static final int BLEND_INVERT = 4;  // Special mode for right filter
     
+    // Programmable: destination * multiply color, then inverted and scaled by the
+    // invert color, in one pass (RightFilter's two passes)
+    public static final int BLEND_MULTIPLY_INVERT = 5;
+    
+    // Framebuffer fetch extensions, best first, with the define selecting each in shaders
+    private static final String[][] FRAMEBUFFER_FETCH_EXTENSIONS = {
+        { "GL_EXT_shader_framebuffer_fetch", "FRAMEBUFFER_FETCH_EXT" },
+        { "GL_ARM_shader_framebuffer_fetch", "FRAMEBUFFER_FETCH_ARM" },
+    };
+    
+    // Define of the supported framebuffer fetch extension, "" if none; null until checked
+    private static volatile String framebufferFetchDefine;
+    
     /**
      * Applies the specified blend mode
+     * Goes through GLStateCache, so re-applying the current mode issues no GL calls
      * @param blendMode The blend mode to apply
      */
     public static void applyBlendMode(int blendMode) {
-        GLES32.glEnable(GLES32.GL_BLEND);
+        GLStateCache state = GLStateCache.current();
+        if (isProgrammable(blendMode)) {
+            // The shader writes the blended color itself
+            state.setBlendEnabled(false);
+            return;
+        }
+        state.setBlendEnabled(true);
         
         switch(blendMode) {
             case BLEND_ADDITIVE:
                 // Additive blending: add colors together
-                GLES32.glBlendFunc(GLES32.GL_ONE, GLES32.GL_ONE);
+                state.blendFunc(GLES32.GL_ONE, GLES32.GL_ONE);
                 break;
                 
             case BLEND_MULTIPLICATIVE:
                 // Multiplicative blending: multiply colors
-                GLES32.glBlendFunc(GLES32.GL_ZERO, GLES32.GL_SRC_COLOR);
+                state.blendFunc(GLES32.GL_ZERO, GLES32.GL_SRC_COLOR);
                 break;
                 
             case BLEND_ALPHA:
                 // Alpha blending with additive component
-                GLES32.glBlendFunc(GLES32.GL_SRC_ALPHA, GLES32.GL_ONE);
+                state.blendFunc(GLES32.GL_SRC_ALPHA, GLES32.GL_ONE);
                 break;
                 
             case BLEND_XOR:
                 // XOR-like blending: exclusive or effect
-                GLES32.glBlendFunc(GLES32.GL_ONE_MINUS_DST_COLOR, GLES32.GL_ONE_MINUS_SRC_COLOR);
+                state.blendFunc(GLES32.GL_ONE_MINUS_DST_COLOR, GLES32.GL_ONE_MINUS_SRC_COLOR);
                 break;
                 
             case BLEND_INVERT:
                 // Invert blending: invert destination color
-                GLES32.glBlendFunc(GLES32.GL_ONE_MINUS_DST_COLOR, GLES32.GL_ZERO);
+                state.blendFunc(GLES32.GL_ONE_MINUS_DST_COLOR, GLES32.GL_ZERO);
                 break;
                 
             default:
                 // Default to standard alpha blending
-                GLES32.glBlendFunc(GLES32.GL_SRC_ALPHA, GLES32.GL_ONE_MINUS_SRC_ALPHA);
+                state.blendFunc(GLES32.GL_SRC_ALPHA, GLES32.GL_ONE_MINUS_SRC_ALPHA);
                 break;
         }
     }
     
+    /**
+     * Checks whether a blend mode is done in the shader via framebuffer fetch
+     */
+    public static boolean isProgrammable(int blendMode) {
+        return blendMode == BLEND_MULTIPLY_INVERT;
+    }
+    
+    /**
+     * Gets the shader define that enables the driver's framebuffer fetch extension
+     * Must be called with a context current; the result is the same for every
+     * context of the process.
+     * @return "FRAMEBUFFER_FETCH_EXT", "FRAMEBUFFER_FETCH_ARM", or null if
+     *         programmable blend modes are unavailable
+     */
+    public static String getFramebufferFetchDefine() {
+        if (framebufferFetchDefine == null) {
+            String extensions = GLES32.glGetString(GLES32.GL_EXTENSIONS);
+            String define = "";
+            for (String[] extension : FRAMEBUFFER_FETCH_EXTENSIONS) {
+                if (extensions != null && extensions.contains(extension[0])) {
+                    define = extension[1];
+                    break;
+                }
+            }
+            framebufferFetchDefine = define;
+        }
+        return framebufferFetchDefine.isEmpty() ? null : framebufferFetchDefine;
+    }
+    
     /**
      * Disables blending
      */
     public static void disableBlending() {
-        GLES32.glDisable(GLES32.GL_BLEND);
+        GLStateCache.current().setBlendEnabled(false);
     }
     
     /**
@@ -74,6 +129,7 @@ public class BlendModeManager {
             case BLEND_ALPHA: return "Alpha";
             case BLEND_XOR: return "XOR";
             case BLEND_INVERT: return "Invert";
+            case BLEND_MULTIPLY_INVERT: return "Multiply + invert";
             default: return "Default";
         }
     }
@@ -84,6 +140,6 @@ public class BlendModeManager {
      * @return True if valid
      */
     public static boolean isValidBlendMode(int blendMode) {
-        return blendMode >= BLEND_ADDITIVE && blendMode <= BLEND_INVERT;
+        return blendMode >= BLEND_ADDITIVE && blendMode <= BLEND_MULTIPLY_INVERT;
     }
 }
\ No newline at end of file
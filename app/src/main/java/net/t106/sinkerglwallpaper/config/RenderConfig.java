@@ -22,8 +22,8 @@ public class RenderConfig {
             this.clockwise = clockwise;
         }
         
-        // Predefined configurations
-        public static final RotationConfig CENTER = new RotationConfig(-0.125f, 2881, false);
+        // Predefined configurations (counter-clockwise negates the speed)
+        public static final RotationConfig CENTER = new RotationConfig(0.125f, 2881, false);
         public static final RotationConfig BACKGROUND = new RotationConfig(0.125f, 2880, true);
     }
     
@@ -45,26 +45,55 @@ public class RenderConfig {
         
         // Predefined colors
         public static final ColorConfig WHITE = new ColorConfig(1.0f, 1.0f, 1.0f, 1.0f);
-        public static final ColorConfig REDDISH_BROWN = new ColorConfig(0.375f, 0.04f, 0.09f, 0.5f);
+        public static final ColorConfig REDDISH_BROWN = new ColorConfig(0.375f, 0.04f, 0.09f, 1.0f);
+        public static final ColorConfig CYAN_TINT = new ColorConfig(0.37f, 1.0f, 1.0f, 1.0f);
         public static final ColorConfig PINKISH = new ColorConfig(1.0f, 0.5f, 0.5f, 0.5f);
         
     }
     
     /**
      * Configuration for textures
+     * Mirrored variants are texture coordinate transforms of the same texture
+     * (uv * uvScale + uvOffset), so they cost no extra texture memory
      */
     public static class TextureConfig {
         public final int textureIndex;
         public final boolean useTexture;
+        public final float uvScaleU;
+        public final float uvScaleV;
+        public final float uvOffsetU;
+        public final float uvOffsetV;
         
         public TextureConfig(int textureIndex, boolean useTexture) {
+            this(textureIndex, useTexture, false, false);
+        }
+        
+        public TextureConfig(int textureIndex, boolean useTexture, boolean mirrorU, boolean mirrorV) {
             this.textureIndex = textureIndex;
             this.useTexture = useTexture;
+            this.uvScaleU = mirrorU ? -1.0f : 1.0f;
+            this.uvScaleV = mirrorV ? -1.0f : 1.0f;
+            this.uvOffsetU = mirrorU ? 1.0f : 0.0f;
+            this.uvOffsetV = mirrorV ? 1.0f : 0.0f;
+        }
+        
+        /**
+         * Applies the UV transform to texture coordinates
+         * @param texCoords Texture coordinates (u, v for each vertex)
+         * @return Transformed copy
+         */
+        public float[] transformTexCoords(float[] texCoords) {
+            float[] result = new float[texCoords.length];
+            for (int i = 0; i < texCoords.length; i += 2) {
+                result[i] = texCoords[i] * uvScaleU + uvOffsetU;
+                result[i + 1] = texCoords[i + 1] * uvScaleV + uvOffsetV;
+            }
+            return result;
         }
         
         // Predefined texture configurations
         public static final TextureConfig TEXTURE_0 = new TextureConfig(0, true);
-        public static final TextureConfig TEXTURE_1 = new TextureConfig(1, true);
+        public static final TextureConfig TEXTURE_0_MIRRORED = new TextureConfig(0, true, true, false);
         public static final TextureConfig NO_TEXTURE = new TextureConfig(0, false);
     }
     
@@ -155,12 +184,12 @@ public class RenderConfig {
         
         // Predefined complete configurations
         public static final CompleteConfig CENTER_GARLAND = new CompleteConfig(
-            RotationConfig.CENTER, ColorConfig.WHITE, TextureConfig.TEXTURE_0,
+            RotationConfig.CENTER, ColorConfig.CYAN_TINT, TextureConfig.TEXTURE_0,
             GeometryConfig.STANDARD_QUAD, BlendModeManager.BLEND_ADDITIVE
         );
         
         public static final CompleteConfig BACKGROUND_GARLAND = new CompleteConfig(
-            RotationConfig.BACKGROUND, ColorConfig.REDDISH_BROWN, TextureConfig.TEXTURE_1,
+            RotationConfig.BACKGROUND, ColorConfig.REDDISH_BROWN, TextureConfig.TEXTURE_0_MIRRORED,
             GeometryConfig.LARGE_QUAD, BlendModeManager.BLEND_ADDITIVE
         );
     }
@@ -0,0 +1,228 @@
+package net.t106.sinkerglwallpaper.opengl.shaders;
+
+import android.content.Context;
+import android.opengl.GLES32;
+import android.util.Log;
+import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of linked program binaries
+ * Linked programs are saved with glGetProgramBinary in the app's cache dir
+ * and restored with glProgramBinary on later starts, skipping compile and
+ * link. Files are named by a hash of both sources plus GL_RENDERER and
+ * GL_VERSION, so a driver update simply misses. A file that is corrupt or
+ * rejected by the driver is deleted and the program is compiled from source.
+ *
+ * Must be used on a GL thread with a current context.
+ */
+public class ProgramBinaryCache {
+    private static final String TAG = "ProgramBinaryCache";
+
+    private static final String DIRECTORY = "program_binaries";
+    private static final int MAGIC = 0x53505242;  // "SPRB"
+    private static final int MAX_BINARY_BYTES = 4 * 1024 * 1024;
+
+    private static final ProgramBinaryCache instance = new ProgramBinaryCache();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    // GL_RENDERER and GL_VERSION; the same for every context of the process
+    private volatile String driverId;
+    private volatile boolean supported;
+
+    private ProgramBinaryCache() {
+    }
+
+    public static ProgramBinaryCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a program from a cached binary, or compiles it and caches the binary
+     * @param context Application context, for the cache dir
+     * @param vertexSource Vertex shader source code
+     * @param fragmentSource Fragment shader source code
+     * @return Linked program handle, or 0 if creation failed
+     */
+    public int createProgram(Context context, String vertexSource, String fragmentSource) {
+        if (context == null || !checkSupport()) {
+            return ShaderUtils.createProgram(vertexSource, fragmentSource);
+        }
+
+        File file = getFile(context, vertexSource, fragmentSource);
+        if (file != null && file.exists()) {
+            int program = load(file);
+            if (program != 0) {
+                hits.incrementAndGet();
+                return program;
+            }
+            rejected.incrementAndGet();
+            file.delete();
+        }
+
+        misses.incrementAndGet();
+        int program = ShaderUtils.createProgram(vertexSource, fragmentSource, true);
+        if (program != 0 && file != null) {
+            store(file, program);
+        }
+        return program;
+    }
+
+    /**
+     * Gets the number of programs restored from disk
+     */
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of programs compiled from source (including rejected binaries)
+     */
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of cached binaries that were corrupt or refused by the driver
+     */
+    public int getRejectedCount() {
+        return rejected.get();
+    }
+
+    private boolean checkSupport() {
+        if (driverId == null) {
+            int[] formats = new int[1];
+            GLES32.glGetIntegerv(GLES32.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+            supported = formats[0] > 0;
+            driverId = GLES32.glGetString(GLES32.GL_RENDERER) + "\n" + GLES32.glGetString(GLES32.GL_VERSION);
+            if (!supported) {
+                Log.i(TAG, "Driver offers no program binary formats, cache disabled");
+            }
+        }
+        return supported;
+    }
+
+    private File getFile(Context context, String vertexSource, String fragmentSource) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(driverId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(vertexSource.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fragmentSource.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest()) {
+                name.append(String.format("%02x", b & 0xFF));
+            }
+            File directory = new File(context.getCacheDir(), DIRECTORY);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return null;
+            }
+            return new File(directory, name.append(".bin").toString());
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "SHA-256 unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * File layout: magic, binary format, binary length, CRC32 of the binary, binary
+     */
+    private int load(File file) {
+        byte[] binary;
+        int format;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                return 0;
+            }
+            format = in.readInt();
+            int length = in.readInt();
+            long checksum = in.readLong();
+            if (length <= 0 || length > MAX_BINARY_BYTES || length != file.length() - 20) {
+                return 0;
+            }
+            binary = new byte[length];
+            in.readFully(binary);
+            CRC32 crc = new CRC32();
+            crc.update(binary);
+            if (crc.getValue() != checksum) {
+                Log.w(TAG, "Corrupt program binary " + file.getName());
+                return 0;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read program binary " + file.getName(), e);
+            return 0;
+        }
+
+        int program = GLES32.glCreateProgram();
+        if (program == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length).order(ByteOrder.nativeOrder());
+        buffer.put(binary).position(0);
+        GLES32.glProgramBinary(program, format, buffer, binary.length);
+
+        int[] linked = new int[1];
+        GLES32.glGetProgramiv(program, GLES32.GL_LINK_STATUS, linked, 0);
+        if (linked[0] == 0) {
+            Log.w(TAG, "Driver rejected program binary " + file.getName());
+            GLES32.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    private void store(File file, int program) {
+        int[] length = new int[1];
+        GLES32.glGetProgramiv(program, GLES32.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0 || length[0] > MAX_BINARY_BYTES) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        int[] written = new int[1];
+        int[] format = new int[1];
+        GLES32.glGetProgramBinary(program, length[0], written, 0, format, 0, buffer);
+        if (written[0] <= 0) {
+            return;
+        }
+        byte[] binary = new byte[written[0]];
+        buffer.position(0);
+        buffer.get(binary);
+        CRC32 crc = new CRC32();
+        crc.update(binary);
+
+        // Write next to the target and rename, so a reader never sees half a file
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(format[0]);
+            out.writeInt(binary.length);
+            out.writeLong(crc.getValue());
+            out.write(binary);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write program binary " + file.getName(), e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+}
\ No newline at end of file
@@ -3,19 +3,44 @@ package net.t106.sinkerglwallpaper.opengl.shaders;
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.util.Log;
+import net.t106.sinkerglwallpaper.opengl.utils.GLResourcePool;
 import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Shader loader utility for loading shader source code from assets
+ *
+ * Programs acquired through acquireProgramFromAssets() form a process-wide
+ * cache keyed by (vertex shader, fragment shader, defines): each variant is
+ * linked once per renderer scope, since uniforms are program state and must
+ * not be shared between contexts, and reference counted by the resource pool.
+ * Uniform locations of cached programs are looked up once and remembered,
+ * see getUniformLocation(). Linked binaries persist across starts through
+ * ProgramBinaryCache.
  */
 public class ShaderLoader {
     private static final String TAG = "ShaderLoader";
     
+    // Asset sources never change while the process lives
+    private static final ConcurrentHashMap<String, String> sourceCache = new ConcurrentHashMap<>();
+    
+    // Uniform locations per program handle; handles are unique across the share group
+    private static final HashMap<Integer, HashMap<String, Integer>> uniformLocations = new HashMap<>();
+    
+    /**
+     * Deletes a cached program together with its remembered uniform locations
+     */
+    public static final GLResourcePool.Deleter DELETE_PROGRAM = handles -> {
+        forgetUniformLocations(handles[0]);
+        GLResourcePool.DELETE_PROGRAM.delete(handles);
+    };
+    
     /**
      * Loads shader source code from assets
      * @param context Application context
@@ -23,6 +48,10 @@ public class ShaderLoader {
      * @return Shader source code, or null if loading failed
      */
     public static String loadShaderFromAssets(Context context, String filename) {
+        String cached = sourceCache.get(filename);
+        if (cached != null) {
+            return cached;
+        }
         try {
             AssetManager assetManager = context.getAssets();
             InputStream inputStream = assetManager.open("shaders/" + filename);
@@ -35,6 +64,7 @@ public class ShaderLoader {
             }
             
             reader.close();
+            sourceCache.put(filename, source.toString());
             return source.toString();
             
         } catch (IOException e) {
@@ -43,14 +73,39 @@ public class ShaderLoader {
         }
     }
     
+    /**
+     * Inserts #define lines right after the #version directive
+     * @param source Shader source
+     * @param defines Macro definitions such as "NAME" or "NAME 2"
+     * @return Source with the defines, or source itself if there are none
+     */
+    public static String injectDefines(String source, String... defines) {
+        if (defines == null || defines.length == 0) {
+            return source;
+        }
+        StringBuilder block = new StringBuilder();
+        for (String define : defines) {
+            block.append("#define ").append(define).append("\n");
+        }
+        // #version must stay the first line
+        int insertAt = 0;
+        if (source.startsWith("#version")) {
+            int newline = source.indexOf('\n');
+            insertAt = newline >= 0 ? newline + 1 : source.length();
+        }
+        return source.substring(0, insertAt) + block + source.substring(insertAt);
+    }
+    
     /**
      * Creates a shader program from asset files
      * @param context Application context
      * @param vertexShaderFile Vertex shader filename
      * @param fragmentShaderFile Fragment shader filename
+     * @param defines Macro definitions injected into both stages
      * @return Shader program handle, or 0 if creation failed
      */
-    public static int createProgramFromAssets(Context context, String vertexShaderFile, String fragmentShaderFile) {
+    public static int createProgramFromAssets(Context context, String vertexShaderFile, String fragmentShaderFile,
+                                              String... defines) {
         String vertexSource = loadShaderFromAssets(context, vertexShaderFile);
         String fragmentSource = loadShaderFromAssets(context, fragmentShaderFile);
         
@@ -59,11 +114,89 @@ public class ShaderLoader {
             return 0;
         }
         
-        return ShaderUtils.createProgram(vertexSource, fragmentSource);
+        return ProgramBinaryCache.getInstance().createProgram(context,
+                injectDefines(vertexSource, defines), injectDefines(fragmentSource, defines));
+    }
+    
+    /**
+     * Gets the cache key of a program variant
+     */
+    public static String getProgramKey(String vertexShaderFile, String fragmentShaderFile, String... defines) {
+        StringBuilder key = new StringBuilder("program:").append(vertexShaderFile).append('|').append(fragmentShaderFile);
+        if (defines != null) {
+            for (String define : defines) {
+                key.append('|').append(define);
+            }
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Gets a shader program owned by a scope, compiling it on first use
+     * @param context Application context
+     * @param scope Resource scope that will own the reference
+     * @param vertexShaderFile Vertex shader filename
+     * @param fragmentShaderFile Fragment shader filename
+     * @param defines Macro definitions injected into both stages; part of the cache key
+     * @return Shader program handle, or 0 if creation failed
+     */
+    public static int acquireProgramFromAssets(Context context, GLResourcePool.Scope scope,
+                                               String vertexShaderFile, String fragmentShaderFile,
+                                               String... defines) {
+        int[] handles = scope.acquirePrivate(getProgramKey(vertexShaderFile, fragmentShaderFile, defines), () -> {
+            int program = createProgramFromAssets(context, vertexShaderFile, fragmentShaderFile, defines);
+            return program != 0 ? new int[] { program } : null;
+        }, DELETE_PROGRAM);
+        return handles != null ? handles[0] : 0;
+    }
+    
+    /**
+     * Gets the location of a uniform, querying GL only the first time per program
+     * @param program Shader program handle
+     * @param name Uniform variable name
+     * @return Uniform location, or -1 if not found
+     */
+    public static int getUniformLocation(int program, String name) {
+        synchronized (uniformLocations) {
+            HashMap<String, Integer> locations = uniformLocations.get(program);
+            if (locations == null) {
+                locations = new HashMap<>();
+                uniformLocations.put(program, locations);
+            }
+            Integer location = locations.get(name);
+            if (location == null) {
+                location = ShaderUtils.getUniformLocation(program, name);
+                locations.put(name, location);
+            }
+            return location;
+        }
+    }
+    
+    /**
+     * Drops the remembered uniform locations of a program; GL may reuse its name
+     */
+    public static void forgetUniformLocations(int program) {
+        synchronized (uniformLocations) {
+            uniformLocations.remove(program);
+        }
+    }
+    
+    /**
+     * Drops all remembered uniform locations
+     * Call when the share group is destroyed together with its programs
+     */
+    public static void clearUniformLocations() {
+        synchronized (uniformLocations) {
+            uniformLocations.clear();
+        }
     }
     
     /**
      * Predefined shader programs for the application
+     * The acquire methods take a BlendModeManager mode and return the variant
+     * compiled with BLEND_MODE set to it, so fragment shaders carry no
+     * per-fragment blend mode branches. Variants that never set BLEND_MODE
+     * behave like BLEND_ADDITIVE.
      */
     public static class Programs {
         public static int createBasicProgram(Context context) {
@@ -77,5 +210,44 @@ public class ShaderLoader {
         public static int createColorProgram(Context context) {
             return createProgramFromAssets(context, "basic_vertex.glsl", "color_fragment.glsl");
         }
+        
+        public static int acquireBasicProgram(Context context, GLResourcePool.Scope scope, int blendMode) {
+            return acquireProgramFromAssets(context, scope, "basic_vertex.glsl", "basic_fragment.glsl",
+                    blendModeDefine(blendMode));
+        }
+        
+        public static int acquireBlendProgram(Context context, GLResourcePool.Scope scope, int blendMode) {
+            return acquireProgramFromAssets(context, scope, "basic_vertex.glsl", "blend_fragment.glsl",
+                    blendModeDefine(blendMode));
+        }
+        
+        public static int acquireColorProgram(Context context, GLResourcePool.Scope scope, int blendMode) {
+            return acquireProgramFromAssets(context, scope, "basic_vertex.glsl", "color_fragment.glsl",
+                    blendModeDefine(blendMode));
+        }
+        
+        public static int acquireInstancedBlendProgram(Context context, GLResourcePool.Scope scope, int blendMode) {
+            return acquireProgramFromAssets(context, scope, "instanced_vertex.glsl", "instanced_blend_fragment.glsl",
+                    blendModeDefine(blendMode));
+        }
+        
+        /**
+         * Gets the single-pass BLEND_MULTIPLY_INVERT program
+         * @param framebufferFetchDefine BlendModeManager.getFramebufferFetchDefine()
+         */
+        public static int acquireMultiplyInvertProgram(Context context, GLResourcePool.Scope scope,
+                                                       String framebufferFetchDefine) {
+            return acquireProgramFromAssets(context, scope, "basic_vertex.glsl", "multiply_invert_fragment.glsl",
+                    framebufferFetchDefine);
+        }
+        
+        public static int acquireFusedProgram(Context context, GLResourcePool.Scope scope, int garlandCount) {
+            return acquireProgramFromAssets(context, scope, "fused_vertex.glsl", "fused_fragment.glsl",
+                    "GARLAND_COUNT " + garlandCount);
+        }
+        
+        private static String blendModeDefine(int blendMode) {
+            return "BLEND_MODE " + blendMode;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+
+/**
+ * Reads shader sources and decodes images on a background thread
+ * Started when an engine is created, so the work overlaps EGL bring-up and
+ * the GL thread only uploads and compiles once its context is current.
+ * Shader sources land in ShaderLoader's source cache; images and raw
+ * assets are handed out once through takeImage() / takeAsset(), trimmed
+ * meshes through takeMesh(). Anything not preloaded is simply loaded on
+ * the GL thread as before.
+ */
+public class AssetPreloader {
+    private static final String TAG = "AssetPreloader";
+
+    private static final String SHADER_DIRECTORY = "shaders";
+
+    // Upper bound for the GL thread to wait on a pending task before loading itself
+    private static final long WAIT_TIMEOUT_MS = 2000;
+
+    private static final AssetPreloader instance = new AssetPreloader();
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<Integer, Future<TextureImage>> images = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Future<byte[]>> assets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Future<TrimmedQuadMesh>> meshes = new ConcurrentHashMap<>();
+    private volatile Future<?> shaders;
+
+    private AssetPreloader() {
+        executor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        // The thread is only needed around engine creation
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static AssetPreloader getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts reading every shader in assets/shaders/ unless already done
+     */
+    public synchronized void preloadShaders(Context context) {
+        if (shaders != null) {
+            return;  // sources never change, one pass per process is enough
+        }
+        Context appContext = context.getApplicationContext();
+        shaders = executor.submit(() -> {
+            try {
+                String[] files = appContext.getAssets().list(SHADER_DIRECTORY);
+                if (files == null) {
+                    return;
+                }
+                for (String file : files) {
+                    if (file.endsWith(".glsl")) {
+                        ShaderLoader.loadShaderFromAssets(appContext, file);
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to list shaders", e);
+            }
+        });
+    }
+
+    /**
+     * Starts decoding a drawable into upload-ready pixels unless a decode of it is already pending
+     * @param context Application context
+     * @param resourceId Resource ID of the image
+     * @param targetSize Largest on-screen size in pixels, see TextureUtils.decodeBitmap()
+     * @param opaque True if the image has no alpha channel
+     */
+    public void preloadImage(Context context, int resourceId, int targetSize, boolean opaque) {
+        Context appContext = context.getApplicationContext();
+        images.computeIfAbsent(resourceId, id -> executor.submit(
+                () -> TextureUtils.decodeImage(appContext, id, targetSize, opaque)));
+    }
+
+    /**
+     * Starts reading an asset file unless a read of it is already pending
+     * @param context Application context
+     * @param path Path inside assets/
+     */
+    public void preloadAsset(Context context, String path) {
+        Context appContext = context.getApplicationContext();
+        assets.computeIfAbsent(path, key -> executor.submit(() -> readAsset(appContext, key)));
+    }
+
+    /**
+     * Starts loading or building a drawable's trimmed mesh unless a load of it is already pending
+     * @param context Application context
+     * @param resourceId Resource ID of the image, see TrimmedQuadMesh.load()
+     */
+    public void preloadMesh(Context context, int resourceId) {
+        Context appContext = context.getApplicationContext();
+        meshes.computeIfAbsent(resourceId, id -> executor.submit(() -> TrimmedQuadMesh.load(appContext, id)));
+    }
+
+    /**
+     * Waits until the shader sources started by preloadShaders() are cached
+     * Call on the GL thread before compiling; returns at once if nothing is pending
+     */
+    public void awaitShaders() {
+        Future<?> pending = shaders;
+        if (pending != null) {
+            await(pending, "shaders");
+        }
+    }
+
+    /**
+     * Takes a preloaded image, waiting for its decode to finish
+     * @param resourceId Resource ID passed to preloadImage()
+     * @return Decoded image now owned by the caller, or null if it was not preloaded
+     */
+    public TextureImage takeImage(int resourceId) {
+        Future<TextureImage> pending = images.remove(resourceId);
+        return pending != null ? await(pending, "image " + resourceId) : null;
+    }
+
+    /**
+     * Takes a preloaded asset, waiting for its read to finish
+     * @param path Path passed to preloadAsset()
+     * @return File contents, or null if it was not preloaded or does not exist
+     */
+    public byte[] takeAsset(String path) {
+        Future<byte[]> pending = assets.remove(path);
+        return pending != null ? await(pending, path) : null;
+    }
+
+    /**
+     * Takes a preloaded mesh, waiting for its load to finish
+     * @param resourceId Resource ID passed to preloadMesh()
+     * @return Mesh, or null if it was not preloaded or the image needs none
+     */
+    public TrimmedQuadMesh takeMesh(int resourceId) {
+        Future<TrimmedQuadMesh> pending = meshes.remove(resourceId);
+        return pending != null ? await(pending, "mesh " + resourceId) : null;
+    }
+
+    /**
+     * Reads a whole asset file
+     * @return File contents, or null if the asset does not exist
+     */
+    public static byte[] readAsset(Context context, String path) {
+        try (InputStream in = context.getAssets().open(path)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 1024));
+            byte[] chunk = new byte[16 * 1024];
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                out.write(chunk, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static <T> T await(Future<T> pending, String what) {
+        try {
+            return pending.get(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Preload of " + what + " still running, loading on the GL thread");
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Preload of " + what + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
\ No newline at end of file
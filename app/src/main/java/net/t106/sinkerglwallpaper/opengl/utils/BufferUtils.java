@@ -5,6 +5,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 
 /**
  * Buffer utility class for OpenGL ES 3.2
@@ -37,15 +38,35 @@ public class BufferUtils {
         GLES32.glGenBuffers(1, buffers, 0);
         
         int vbo = buffers[0];
-        GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, vbo);
+        GLStateCache.current().bindArrayBuffer(vbo);
         
         FloatBuffer buffer = createFloatBuffer(data);
         GLES32.glBufferData(GLES32.GL_ARRAY_BUFFER, data.length * 4, buffer, usage);
         
-        GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, 0);
         return vbo;
     }
     
+    /**
+     * Creates an index buffer in the bound VAO
+     * The element array binding is part of the VAO, so bind it first.
+     * @param indices Triangle indices
+     * @return Buffer handle
+     */
+    public static int createIndexBuffer(short[] indices) {
+        int[] buffers = new int[1];
+        GLES32.glGenBuffers(1, buffers, 0);
+        
+        int ibo = buffers[0];
+        ShortBuffer buffer = ByteBuffer.allocateDirect(indices.length * 2)
+            .order(ByteOrder.nativeOrder()).asShortBuffer();
+        buffer.put(indices);
+        buffer.position(0);
+        GLES32.glBindBuffer(GLES32.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        GLES32.glBufferData(GLES32.GL_ELEMENT_ARRAY_BUFFER, indices.length * 2, buffer, GLES32.GL_STATIC_DRAW);
+        
+        return ibo;
+    }
+    
     /**
      * Creates a VAO (Vertex Array Object)
      * @return VAO handle
@@ -74,26 +95,65 @@ public class BufferUtils {
      * @param texCoords Texture coordinate data (u, v for each vertex)
      * @param positionLocation Position attribute location in shader
      * @param texCoordLocation Texture coordinate attribute location in shader
+     * @param vbosOut Receives [position VBO, texture coordinate VBO]; the caller must delete them
      * @return VAO handle
      */
     public static int createQuadVAO(float[] vertices, float[] texCoords, 
-                                   int positionLocation, int texCoordLocation) {
+                                   int positionLocation, int texCoordLocation, int[] vbosOut) {
+        GLStateCache state = GLStateCache.current();
         int vao = createVAO();
-        GLES32.glBindVertexArray(vao);
+        state.bindVertexArray(vao);
         
-        // Create and bind vertex position VBO
+        // Create and bind vertex position VBO (createVBO leaves it bound)
         int vertexVBO = createVBO(vertices, GLES32.GL_STATIC_DRAW);
-        GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, vertexVBO);
         setVertexAttribute(positionLocation, 2, 0, 0);
         
         // Create and bind texture coordinate VBO
         int texCoordVBO = createVBO(texCoords, GLES32.GL_STATIC_DRAW);
-        GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, texCoordVBO);
         setVertexAttribute(texCoordLocation, 2, 0, 0);
         
-        GLES32.glBindVertexArray(0);
-        GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, 0);
+        state.bindVertexArray(0);
         
+        vbosOut[0] = vertexVBO;
+        vbosOut[1] = texCoordVBO;
+        return vao;
+    }
+    
+    /**
+     * Creates one VBO holding interleaved, converted vertex data
+     * @param format Vertex layout
+     * @param data One array per attribute of the format, in builder order
+     * @param vertexCount Number of vertices
+     * @return VBO handle, left bound to GL_ARRAY_BUFFER
+     */
+    public static int createInterleavedVBO(VertexFormat format, float[][] data, int vertexCount) {
+        int[] buffers = new int[1];
+        GLES32.glGenBuffers(1, buffers, 0);
+        
+        int vbo = buffers[0];
+        GLStateCache.current().bindArrayBuffer(vbo);
+        GLES32.glBufferData(GLES32.GL_ARRAY_BUFFER, vertexCount * format.getStride(),
+                            format.pack(data, vertexCount), GLES32.GL_STATIC_DRAW);
+        return vbo;
+    }
+    
+    /**
+     * Creates a VAO over a single interleaved VBO
+     * @param format Vertex layout
+     * @param data One array per attribute of the format, in builder order
+     * @param vertexCount Number of vertices
+     * @param vboOut Receives the VBO handle; the caller must delete it
+     * @return VAO handle
+     */
+    public static int createInterleavedVAO(VertexFormat format, float[][] data, int vertexCount, int[] vboOut) {
+        GLStateCache state = GLStateCache.current();
+        int vao = createVAO();
+        state.bindVertexArray(vao);
+        
+        vboOut[0] = createInterleavedVBO(format, data, vertexCount);
+        format.bindAttributes();
+        
+        state.bindVertexArray(0);
         return vao;
     }
     
@@ -122,6 +182,7 @@ public class BufferUtils {
      * @param vbo VBO handle to delete
      */
     public static void deleteVBO(int vbo) {
+        GLStateCache.current().forgetBuffer(vbo);
         int[] buffers = {vbo};
         GLES32.glDeleteBuffers(1, buffers, 0);
     }
@@ -131,23 +192,24 @@ public class BufferUtils {
      * @param vao VAO handle to delete
      */
     public static void deleteVAO(int vao) {
+        GLStateCache.current().forgetVertexArray(vao);
         int[] arrays = {vao};
         GLES32.glDeleteVertexArrays(1, arrays, 0);
     }
     
     /**
-     * Binds a VAO for rendering
+     * Binds a VAO for rendering; no GL call if it is already bound
      * @param vao VAO handle
      */
     public static void bindVAO(int vao) {
-        GLES32.glBindVertexArray(vao);
+        GLStateCache.current().bindVertexArray(vao);
     }
     
     /**
      * Unbinds the current VAO
      */
     public static void unbindVAO() {
-        GLES32.glBindVertexArray(0);
+        GLStateCache.current().bindVertexArray(0);
     }
     
     /**
@@ -156,4 +218,12 @@ public class BufferUtils {
     public static void drawQuad() {
         GLES32.glDrawArrays(GLES32.GL_TRIANGLE_STRIP, 0, 4);
     }
+    
+    /**
+     * Draws triangles from the bound VAO's index buffer
+     * @param indexCount Number of unsigned short indices
+     */
+    public static void drawIndexed(int indexCount) {
+        GLES32.glDrawElements(GLES32.GL_TRIANGLES, indexCount, GLES32.GL_UNSIGNED_SHORT, 0);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.opengl.GLES32;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Reference-counted registry of GL objects shared by all wallpaper engines
+ * Every engine renders in one EGL share group, so textures and buffers created
+ * by one engine are valid in the others. Container objects (VAOs, FBOs) are
+ * per-context and must not be pooled.
+ *
+ * Programs live in the share group too, but uniforms are program state and a
+ * change made by one context is not guaranteed visible to another without a
+ * flush. Each renderer therefore links its own programs through
+ * Scope.acquirePrivate(); relinking is cheap thanks to the binary cache.
+ */
+public class GLResourcePool {
+    private static final String TAG = "GLResourcePool";
+
+    private static final GLResourcePool instance = new GLResourcePool();
+
+    /**
+     * Creates the GL objects for a key; runs on a GL thread with a current context
+     */
+    public interface Factory {
+        /**
+         * @return Object handles, or null if creation failed
+         */
+        int[] create();
+    }
+
+    /**
+     * Deletes the GL objects of a key; runs on a GL thread with a current context
+     */
+    public interface Deleter {
+        void delete(int[] handles);
+    }
+
+    public static final Deleter DELETE_TEXTURES = handles -> TextureUtils.deleteTextures(handles);
+    public static final Deleter DELETE_BUFFERS = handles -> {
+        for (int handle : handles) {
+            BufferUtils.deleteVBO(handle);
+        }
+    };
+    public static final Deleter DELETE_PROGRAM = handles -> {
+        GLStateCache.current().forgetProgram(handles[0]);
+        GLES32.glDeleteProgram(handles[0]);
+    };
+
+    private static class Entry {
+        final int[] handles;
+        final Deleter deleter;
+        int refCount;
+
+        Entry(int[] handles, Deleter deleter) {
+            this.handles = handles;
+            this.deleter = deleter;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final ArrayList<Entry> pendingDeletes = new ArrayList<>();
+    private int generation = 0;
+    private int nextScopeId = 0;
+
+    public static GLResourcePool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens a scope that tracks everything one renderer acquires
+     * @return New scope bound to the current share group
+     */
+    public synchronized Scope openScope() {
+        return new Scope(generation, nextScopeId++);
+    }
+
+    /**
+     * Deletes objects whose last reference was dropped while no context was current
+     * Must be called on a GL thread with a context of the share group current
+     */
+    public synchronized void flushPendingDeletes() {
+        for (Entry entry : pendingDeletes) {
+            entry.deleter.delete(entry.handles);
+        }
+        pendingDeletes.clear();
+    }
+
+    /**
+     * Forgets every entry without deleting it
+     * Called when the last context of the share group is destroyed, at which point
+     * the objects no longer exist; scopes opened before are ignored afterwards
+     */
+    public synchronized void invalidate() {
+        Log.d(TAG, "Share group destroyed, dropping " + entries.size() + " entries");
+        entries.clear();
+        pendingDeletes.clear();
+        generation++;
+    }
+
+    /**
+     * Checks whether a key is alive, e.g. to skip preparing data for it
+     */
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Gets the number of live entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized int[] acquire(int scopeGeneration, String key, Factory factory, Deleter deleter) {
+        if (scopeGeneration != generation) {
+            Log.w(TAG, "Acquire of '" + key + "' through a stale scope");
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            int[] handles = factory.create();
+            if (handles == null) {
+                return null;
+            }
+            // Objects must be complete before another context binds them
+            GLES32.glFinish();
+            entry = new Entry(handles, deleter);
+            entries.put(key, entry);
+            Log.d(TAG, "Created '" + key + "'");
+        }
+        entry.refCount++;
+        return entry.handles;
+    }
+
+    private synchronized void release(int scopeGeneration, String key, boolean contextCurrent) {
+        if (scopeGeneration != generation) {
+            return;  // share group was destroyed since, objects are already gone
+        }
+        Entry entry = entries.get(key);
+        if (entry == null || --entry.refCount > 0) {
+            return;
+        }
+        entries.remove(key);
+        if (contextCurrent) {
+            entry.deleter.delete(entry.handles);
+        } else {
+            pendingDeletes.add(entry);
+        }
+    }
+
+    /**
+     * Set of references held by one renderer, released together
+     */
+    public class Scope {
+        private final int scopeGeneration;
+        private final int scopeId;
+        private final ArrayList<String> keys = new ArrayList<>();
+
+        private Scope(int scopeGeneration, int scopeId) {
+            this.scopeGeneration = scopeGeneration;
+            this.scopeId = scopeId;
+        }
+
+        /**
+         * Gets the shared objects for a key, creating them on first use
+         * @param key Unique name of the resource
+         * @param factory Creates the objects if no engine holds them yet
+         * @param deleter Deletes the objects once the last reference is released
+         * @return Object handles, or null if creation failed
+         */
+        public int[] acquire(String key, Factory factory, Deleter deleter) {
+            int[] handles = GLResourcePool.this.acquire(scopeGeneration, key, factory, deleter);
+            if (handles != null) {
+                keys.add(key);
+            }
+            return handles;
+        }
+
+        /**
+         * Gets objects owned by this scope alone, creating them on first use
+         * For objects carrying mutable state, such as program uniforms, that
+         * must not be shared between contexts
+         * @param key Name of the resource, unique within this scope
+         * @param factory Creates the objects
+         * @param deleter Deletes the objects when the scope is closed
+         * @return Object handles, or null if creation failed
+         */
+        public int[] acquirePrivate(String key, Factory factory, Deleter deleter) {
+            return acquire("scope" + scopeId + ":" + key, factory, deleter);
+        }
+
+        /**
+         * Releases every reference acquired through this scope
+         * @param contextCurrent True if a context of the share group is current on
+         *                       this thread; otherwise deletion is deferred
+         */
+        public void close(boolean contextCurrent) {
+            for (String key : keys) {
+                release(scopeGeneration, key, contextCurrent);
+            }
+            keys.clear();
+        }
+    }
+}
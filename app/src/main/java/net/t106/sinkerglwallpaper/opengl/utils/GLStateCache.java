@@ -0,0 +1,211 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.opengl.GLES32;
+import java.util.Arrays;
+
+/**
+ * Shadow copy of the GL state touched by the renderer
+ * All program, texture, vertex array, buffer and blend changes go through
+ * here so calls that would not change anything are never issued.
+ *
+ * GL state belongs to a context and every GL thread owns exactly one, so
+ * there is one cache per thread (see current()). Call invalidate() whenever
+ * the thread's context is (re)created.
+ */
+public class GLStateCache {
+
+    // Value of a shadowed field whose real GL state is not known
+    private static final int UNKNOWN = -1;
+
+    private static final int MAX_TEXTURE_UNITS = 32;
+
+    private static final ThreadLocal<GLStateCache> caches = new ThreadLocal<GLStateCache>() {
+        @Override
+        protected GLStateCache initialValue() {
+            return new GLStateCache();
+        }
+    };
+
+    private int program;
+    private int vertexArray;
+    private int arrayBuffer;
+    private int activeTextureUnit;
+    private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    private int blendEnabled;
+    private int blendSrc;
+    private int blendDst;
+
+    // Calls since beginFrame()
+    private int issuedCount;
+    private int skippedCount;
+
+    private GLStateCache() {
+        invalidate();
+    }
+
+    /**
+     * Gets the cache of the calling GL thread
+     */
+    public static GLStateCache current() {
+        return caches.get();
+    }
+
+    /**
+     * Forgets all shadowed state so the next change of each kind is issued
+     */
+    public void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        activeTextureUnit = UNKNOWN;
+        Arrays.fill(boundTextures, UNKNOWN);
+        blendEnabled = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+    }
+
+    /**
+     * Resets the issued / skipped counters
+     */
+    public void beginFrame() {
+        issuedCount = 0;
+        skippedCount = 0;
+    }
+
+    /**
+     * Gets the number of GL calls issued since beginFrame()
+     */
+    public int getIssuedCount() {
+        return issuedCount;
+    }
+
+    /**
+     * Gets the number of redundant GL calls filtered out since beginFrame()
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    public void useProgram(int handle) {
+        if (program == handle) {
+            skippedCount++;
+            return;
+        }
+        GLES32.glUseProgram(handle);
+        program = handle;
+        issuedCount++;
+    }
+
+    public void bindVertexArray(int handle) {
+        if (vertexArray == handle) {
+            skippedCount++;
+            return;
+        }
+        GLES32.glBindVertexArray(handle);
+        vertexArray = handle;
+        issuedCount++;
+    }
+
+    /**
+     * Binds GL_ARRAY_BUFFER (not part of vertex array state)
+     */
+    public void bindArrayBuffer(int handle) {
+        if (arrayBuffer == handle) {
+            skippedCount++;
+            return;
+        }
+        GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, handle);
+        arrayBuffer = handle;
+        issuedCount++;
+    }
+
+    public void activeTexture(int textureUnit) {
+        if (activeTextureUnit == textureUnit) {
+            skippedCount++;
+            return;
+        }
+        GLES32.glActiveTexture(GLES32.GL_TEXTURE0 + textureUnit);
+        activeTextureUnit = textureUnit;
+        issuedCount++;
+    }
+
+    /**
+     * Binds a 2D texture to a texture unit, switching the active unit only if needed
+     * @param textureUnit Texture unit (0-31)
+     * @param handle Texture handle
+     */
+    public void bindTexture(int textureUnit, int handle) {
+        if (boundTextures[textureUnit] == handle) {
+            skippedCount++;
+            return;
+        }
+        activeTexture(textureUnit);
+        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, handle);
+        boundTextures[textureUnit] = handle;
+        issuedCount++;
+    }
+
+    public void setBlendEnabled(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (blendEnabled == value) {
+            skippedCount++;
+            return;
+        }
+        if (enabled) {
+            GLES32.glEnable(GLES32.GL_BLEND);
+        } else {
+            GLES32.glDisable(GLES32.GL_BLEND);
+        }
+        blendEnabled = value;
+        issuedCount++;
+    }
+
+    public void blendFunc(int src, int dst) {
+        if (blendSrc == src && blendDst == dst) {
+            skippedCount++;
+            return;
+        }
+        GLES32.glBlendFunc(src, dst);
+        blendSrc = src;
+        blendDst = dst;
+        issuedCount++;
+    }
+
+    /**
+     * Must be called when a texture is deleted; GL unbinds it and may reuse the name
+     */
+    public void forgetTexture(int handle) {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (boundTextures[i] == handle) {
+                boundTextures[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Must be called when a vertex array is deleted
+     */
+    public void forgetVertexArray(int handle) {
+        if (vertexArray == handle) {
+            vertexArray = 0;
+        }
+    }
+
+    /**
+     * Must be called when a buffer is deleted
+     */
+    public void forgetBuffer(int handle) {
+        if (arrayBuffer == handle) {
+            arrayBuffer = 0;
+        }
+    }
+
+    /**
+     * Must be called when a program is deleted
+     */
+    public void forgetProgram(int handle) {
+        if (program == handle) {
+            program = UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.util.Log;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reference-counted registry of quad geometry (VAO plus its VBOs)
+ * Geometry is keyed by vertex content and attribute locations, so objects
+ * with identical quads share one VAO and re-acquiring unchanged geometry
+ * (e.g. on every surface change) creates nothing. The last release deletes
+ * the VAO and both VBOs.
+ *
+ * VAOs belong to a context, so there is one registry per GL thread (see
+ * current()), like GLStateCache. Call invalidate() when the thread's
+ * context is (re)created or destroyed without being current.
+ */
+public class GeometryRegistry {
+    private static final String TAG = "GeometryRegistry";
+
+    private static final ThreadLocal<GeometryRegistry> registries = new ThreadLocal<GeometryRegistry>() {
+        @Override
+        protected GeometryRegistry initialValue() {
+            return new GeometryRegistry();
+        }
+    };
+
+    // Live VBO bytes of all registries
+    private static final AtomicLong totalLiveBufferBytes = new AtomicLong();
+
+    /**
+     * Shared quad geometry; draw with BufferUtils.bindVAO(vao) and drawQuad()
+     */
+    public static class Geometry {
+        public final int vao;
+        private final Key key;
+        private final int[] vbos;
+        private final long bytes;
+        private int refCount;
+
+        private Geometry(Key key, int vao, int[] vbos, long bytes) {
+            this.key = key;
+            this.vao = vao;
+            this.vbos = vbos;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Key {
+        final float[] vertices;
+        final float[] texCoords;
+        final int positionLocation;
+        final int texCoordLocation;
+        final int hash;
+
+        Key(float[] vertices, float[] texCoords, int positionLocation, int texCoordLocation) {
+            this.vertices = vertices.clone();
+            this.texCoords = texCoords.clone();
+            this.positionLocation = positionLocation;
+            this.texCoordLocation = texCoordLocation;
+            this.hash = 31 * (31 * (31 * Arrays.hashCode(vertices) + Arrays.hashCode(texCoords))
+                    + positionLocation) + texCoordLocation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return positionLocation == other.positionLocation
+                    && texCoordLocation == other.texCoordLocation
+                    && Arrays.equals(vertices, other.vertices)
+                    && Arrays.equals(texCoords, other.texCoords);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final HashMap<Key, Geometry> entries = new HashMap<>();
+    private long liveBufferBytes;
+
+    private GeometryRegistry() {
+    }
+
+    /**
+     * Gets the registry of the calling GL thread
+     */
+    public static GeometryRegistry current() {
+        return registries.get();
+    }
+
+    /**
+     * Gets the VBO bytes held by the registries of all GL threads
+     */
+    public static long getTotalLiveBufferBytes() {
+        return totalLiveBufferBytes.get();
+    }
+
+    /**
+     * Gets a quad VAO for the given data, creating it on first use
+     * The data is stored interleaved in one VBO with half-float positions and,
+     * when they lie in [0, 1], normalized 16-bit texture coordinates
+     * @param vertices Vertex position data (x, y for each vertex)
+     * @param texCoords Texture coordinate data (u, v for each vertex)
+     * @param positionLocation Position attribute location in shader
+     * @param texCoordLocation Texture coordinate attribute location in shader
+     * @return Shared geometry; hand it back with release()
+     */
+    public Geometry acquireQuad(float[] vertices, float[] texCoords, int positionLocation, int texCoordLocation) {
+        Key key = new Key(vertices, texCoords, positionLocation, texCoordLocation);
+        Geometry geometry = entries.get(key);
+        if (geometry == null) {
+            VertexFormat format = new VertexFormat.Builder()
+                .attribute(positionLocation, 2, VertexFormat.TYPE_HALF_FLOAT)
+                .attribute(texCoordLocation, 2, isUnitRange(texCoords)
+                    ? VertexFormat.TYPE_USHORT_NORM : VertexFormat.TYPE_HALF_FLOAT)
+                .build();
+            int vertexCount = vertices.length / 2;
+            int[] vbos = new int[1];
+            int vao = BufferUtils.createInterleavedVAO(format, new float[][] { vertices, texCoords }, vertexCount, vbos);
+            long bytes = (long) vertexCount * format.getStride();
+            geometry = new Geometry(key, vao, vbos, bytes);
+            entries.put(key, geometry);
+            liveBufferBytes += bytes;
+            totalLiveBufferBytes.addAndGet(bytes);
+            Log.d(TAG, "Created quad VAO " + vao + " (" + bytes + " bytes, " + liveBufferBytes + " live)");
+        }
+        geometry.refCount++;
+        return geometry;
+    }
+
+    private static boolean isUnitRange(float[] values) {
+        for (float value : values) {
+            if (value < 0.0f || value > 1.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops a reference; the last one deletes the VAO and its VBOs
+     * Must be called with the registry's context current. Geometry from
+     * before the last invalidate() is ignored.
+     */
+    public void release(Geometry geometry) {
+        if (geometry == null || entries.get(geometry.key) != geometry || --geometry.refCount > 0) {
+            return;
+        }
+        entries.remove(geometry.key);
+        BufferUtils.deleteVAO(geometry.vao);
+        for (int vbo : geometry.vbos) {
+            BufferUtils.deleteVBO(vbo);
+        }
+        liveBufferBytes -= geometry.bytes;
+        totalLiveBufferBytes.addAndGet(-geometry.bytes);
+    }
+
+    /**
+     * Forgets every entry without GL calls; their objects died with the context
+     */
+    public void invalidate() {
+        entries.clear();
+        totalLiveBufferBytes.addAndGet(-liveBufferBytes);
+        liveBufferBytes = 0;
+    }
+
+    /**
+     * Gets the VBO bytes held by this registry
+     */
+    public long getLiveBufferBytes() {
+        return liveBufferBytes;
+    }
+
+    /**
+     * Gets the number of distinct geometries alive
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,120 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.opengl.GLES32;
+import android.util.Log;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Uploads compressed 2D textures stored in KTX 1.1 containers
+ * Only compressed formats are accepted (glType 0); every mip level in the
+ * file is uploaded with glCompressedTexImage2D, except leading levels larger
+ * than needed for the requested on-screen size. The assets are written at
+ * build time by the compressTextures task.
+ */
+public class KtxLoader {
+    private static final String TAG = "KtxLoader";
+
+    private static final byte[] IDENTIFIER = {
+        (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int HEADER_SIZE = 64;
+    private static final int ENDIANNESS = 0x04030201;
+
+    /**
+     * Creates a texture from a KTX file
+     * @param file Complete file contents
+     * @param targetSize Largest on-screen size in pixels; levels whose next level
+     *                   still covers it are skipped. 0 uploads every level
+     * @return Texture handle, or 0 if the file is invalid or the driver rejects its format
+     */
+    public static int createTexture(byte[] file, int targetSize) {
+        if (file.length < HEADER_SIZE) {
+            Log.e(TAG, "KTX file too short");
+            return 0;
+        }
+        for (int i = 0; i < IDENTIFIER.length; i++) {
+            if (file[i] != IDENTIFIER[i]) {
+                Log.e(TAG, "Not a KTX 1.1 file");
+                return 0;
+            }
+        }
+        ByteBuffer data = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt(12) != ENDIANNESS) {
+            data.order(ByteOrder.BIG_ENDIAN);
+        }
+        int glType = data.getInt(16);
+        int internalFormat = data.getInt(28);
+        int width = data.getInt(36);
+        int height = data.getInt(40);
+        int depth = data.getInt(44);
+        int elements = data.getInt(48);
+        int faces = data.getInt(52);
+        int levels = Math.max(1, data.getInt(56));
+        int keyValueBytes = data.getInt(60);
+        if (glType != 0 || depth > 1 || elements > 0 || faces != 1 || width <= 0 || height <= 0) {
+            Log.e(TAG, "Unsupported KTX layout (type " + glType + ", " + faces + " faces)");
+            return 0;
+        }
+        int firstLevel = 0;
+        while (targetSize > 0 && firstLevel + 1 < levels
+                && Math.max(width >> (firstLevel + 1), height >> (firstLevel + 1)) >= targetSize) {
+            firstLevel++;
+        }
+
+        int[] textures = new int[1];
+        GLES32.glGenTextures(1, textures, 0);
+        if (textures[0] == 0) {
+            Log.e(TAG, "Failed to generate texture");
+            return 0;
+        }
+        GLStateCache.current().bindTexture(0, textures[0]);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER,
+                levels - firstLevel > 1 ? GLES32.GL_LINEAR_MIPMAP_LINEAR : GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAX_LEVEL, levels - firstLevel - 1);
+
+        // Drop stale errors so the checks below only see the uploads
+        while (GLES32.glGetError() != GLES32.GL_NO_ERROR) {
+        }
+        
+        int offset = HEADER_SIZE + keyValueBytes;
+        long residentBytes = 0;
+        for (int level = 0; level < levels; level++) {
+            if (offset + 4 > file.length) {
+                return fail(textures, "KTX file truncated");
+            }
+            int imageSize = data.getInt(offset);
+            offset += 4;
+            if (imageSize <= 0 || offset + imageSize > file.length) {
+                return fail(textures, "KTX file truncated");
+            }
+            if (level >= firstLevel) {
+                ByteBuffer image = ByteBuffer.allocateDirect(imageSize).order(ByteOrder.nativeOrder());
+                image.put(file, offset, imageSize).position(0);
+                GLES32.glCompressedTexImage2D(GLES32.GL_TEXTURE_2D, level - firstLevel, internalFormat,
+                        Math.max(1, width >> level), Math.max(1, height >> level), 0, imageSize, image);
+                int error = GLES32.glGetError();
+                if (error != GLES32.GL_NO_ERROR) {
+                    return fail(textures, "glCompressedTexImage2D failed for format 0x"
+                            + Integer.toHexString(internalFormat) + ": 0x" + Integer.toHexString(error));
+                }
+                residentBytes += imageSize;
+            }
+            // Mip images are padded to 4 bytes
+            offset += (imageSize + 3) & ~3;
+        }
+        String description = Math.max(1, width >> firstLevel) + "x" + Math.max(1, height >> firstLevel)
+                + " format 0x" + Integer.toHexString(internalFormat) + ", " + (levels - firstLevel) + " level(s)";
+        TextureUtils.trackTexture(textures[0], description, residentBytes);
+        return textures[0];
+    }
+
+    private static int fail(int[] textures, String message) {
+        Log.e(TAG, message);
+        TextureUtils.deleteTextures(textures);
+        return 0;
+    }
+}
\ No newline at end of file
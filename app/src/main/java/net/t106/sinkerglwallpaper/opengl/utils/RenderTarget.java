@@ -0,0 +1,104 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.opengl.GLES32;
+import android.util.Log;
+
+/**
+ * Offscreen RGBA8 color target that is copied to the window at the end of a frame
+ * Frames drawn into it at a reduced size are upscaled with a linear
+ * glBlitFramebuffer. The target belongs to one GL thread (it is sized for
+ * that engine's surface) and is reallocated only when its size changes.
+ */
+public class RenderTarget {
+    private static final String TAG = "RenderTarget";
+
+    private int framebuffer;
+    private int texture;
+    private int width;
+    private int height;
+
+    /**
+     * Makes the target the given size, reallocating its storage if needed
+     * @return False if the framebuffer could not be completed
+     */
+    public boolean resize(int width, int height) {
+        if (framebuffer != 0 && width == this.width && height == this.height) {
+            return true;
+        }
+        release(true);
+
+        texture = TextureUtils.createEmptyTexture(width, height, GLES32.GL_RGBA8);
+        if (texture == 0) {
+            return false;
+        }
+        int[] framebuffers = new int[1];
+        GLES32.glGenFramebuffers(1, framebuffers, 0);
+        framebuffer = framebuffers[0];
+        GLES32.glBindFramebuffer(GLES32.GL_FRAMEBUFFER, framebuffer);
+        GLES32.glFramebufferTexture2D(GLES32.GL_FRAMEBUFFER, GLES32.GL_COLOR_ATTACHMENT0,
+                GLES32.GL_TEXTURE_2D, texture, 0);
+        int status = GLES32.glCheckFramebufferStatus(GLES32.GL_FRAMEBUFFER);
+        GLES32.glBindFramebuffer(GLES32.GL_FRAMEBUFFER, 0);
+        if (status != GLES32.GL_FRAMEBUFFER_COMPLETE) {
+            Log.e(TAG, "Framebuffer incomplete: 0x" + Integer.toHexString(status));
+            release(true);
+            return false;
+        }
+        this.width = width;
+        this.height = height;
+        return true;
+    }
+
+    /**
+     * Directs drawing into the target and sets the viewport to cover it
+     */
+    public void bind() {
+        GLES32.glBindFramebuffer(GLES32.GL_FRAMEBUFFER, framebuffer);
+        GLES32.glViewport(0, 0, width, height);
+    }
+
+    /**
+     * Upscales the target onto the window and makes the window the draw target again
+     * @param windowWidth Window surface width
+     * @param windowHeight Window surface height
+     */
+    public void blitToWindow(int windowWidth, int windowHeight) {
+        GLES32.glBindFramebuffer(GLES32.GL_READ_FRAMEBUFFER, framebuffer);
+        GLES32.glBindFramebuffer(GLES32.GL_DRAW_FRAMEBUFFER, 0);
+        GLES32.glBlitFramebuffer(0, 0, width, height, 0, 0, windowWidth, windowHeight,
+                GLES32.GL_COLOR_BUFFER_BIT, GLES32.GL_LINEAR);
+        GLES32.glBindFramebuffer(GLES32.GL_FRAMEBUFFER, 0);
+        GLES32.glViewport(0, 0, windowWidth, windowHeight);
+    }
+
+    public int getTexture() {
+        return texture;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Deletes the framebuffer and its texture
+     * @param contextCurrent False if the context is already gone; handles are only dropped
+     */
+    public void release(boolean contextCurrent) {
+        if (contextCurrent) {
+            if (framebuffer != 0) {
+                GLES32.glDeleteFramebuffers(1, new int[] { framebuffer }, 0);
+            }
+            if (texture != 0) {
+                TextureUtils.deleteTexture(texture);
+            }
+        }
+        framebuffer = 0;
+        texture = 0;
+        width = 0;
+        height = 0;
+    }
+}
\ No newline at end of file
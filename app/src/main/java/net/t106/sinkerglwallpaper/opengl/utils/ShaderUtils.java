@@ -46,6 +46,17 @@ public class ShaderUtils {
      * @return Linked program handle, or 0 if linking failed
      */
     public static int createProgram(String vertexSource, String fragmentSource) {
+        return createProgram(vertexSource, fragmentSource, false);
+    }
+    
+    /**
+     * Creates and links a shader program
+     * @param vertexSource Vertex shader source code
+     * @param fragmentSource Fragment shader source code
+     * @param retrievable True to hint that glGetProgramBinary will be called on the program
+     * @return Linked program handle, or 0 if linking failed
+     */
+    public static int createProgram(String vertexSource, String fragmentSource, boolean retrievable) {
         int vertexShader = compileShader(GLES32.GL_VERTEX_SHADER, vertexSource);
         if (vertexShader == 0) {
             return 0;
@@ -67,6 +78,9 @@ public class ShaderUtils {
         
         GLES32.glAttachShader(program, vertexShader);
         GLES32.glAttachShader(program, fragmentShader);
+        if (retrievable) {
+            GLES32.glProgramParameteri(program, GLES32.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES32.GL_TRUE);
+        }
         GLES32.glLinkProgram(program);
         
         int[] linked = new int[1];
@@ -125,6 +139,16 @@ public class ShaderUtils {
         GLES32.glUniformMatrix4fv(location, 1, false, matrix, 0);
     }
     
+    /**
+     * Sets a mat4 array uniform
+     * @param location Uniform location of the first element
+     * @param count Number of matrices
+     * @param matrices Column-major matrices, 16 floats each
+     */
+    public static void setUniformMatrix4fv(int location, int count, float[] matrices) {
+        GLES32.glUniformMatrix4fv(location, count, false, matrices, 0);
+    }
+    
     /**
      * Sets a float uniform
      * @param location Uniform location
@@ -155,6 +179,26 @@ public class ShaderUtils {
         GLES32.glUniform4f(location, x, y, z, w);
     }
     
+    /**
+     * Sets a vec4 array uniform
+     * @param location Uniform location of the first element
+     * @param count Number of vectors
+     * @param values Vectors, 4 floats each
+     */
+    public static void setUniform4fv(int location, int count, float[] values) {
+        GLES32.glUniform4fv(location, count, values, 0);
+    }
+    
+    /**
+     * Sets an int array uniform
+     * @param location Uniform location of the first element
+     * @param count Number of values
+     * @param values Integer values
+     */
+    public static void setUniform1iv(int location, int count, int[] values) {
+        GLES32.glUniform1iv(location, count, values, 0);
+    }
+    
     /**
      * Checks for OpenGL errors and logs them
      * @param tag Tag for logging
@@ -0,0 +1,162 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES32;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Decoded pixels held in a direct buffer, ready for upload
+ * A bitmap is copied into the buffer once (on any thread) and recycled;
+ * uploads then go straight from the buffer into immutable glTexStorage2D
+ * textures with glTexSubImage2D, without GLUtils' per-upload bitmap copy.
+ * glTexSubImage2D has copied the pixels when it returns, so the owner
+ * calls release() right after uploading and the buffer is reused by the
+ * next decode instead of being allocated again.
+ */
+public class TextureImage {
+    public final int width;
+    public final int height;
+    public final boolean rgb565;
+
+    // Buffers handed back by release(), ready for the next decode
+    private static final int MAX_SPARE_BUFFERS = 1;
+    private static final ArrayList<ByteBuffer> spareBuffers = new ArrayList<>();
+
+    private ByteBuffer pixels;
+
+    private TextureImage(int width, int height, boolean rgb565, ByteBuffer pixels) {
+        this.width = width;
+        this.height = height;
+        this.rgb565 = rgb565;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Copies a bitmap into a direct buffer and recycles the bitmap
+     * @param bitmap ARGB_8888 or RGB_565 bitmap; other configs are converted to ARGB_8888
+     * @return Image owning the pixels until release()
+     */
+    public static TextureImage fromBitmap(Bitmap bitmap) {
+        Bitmap.Config config = bitmap.getConfig();
+        if (config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565) {
+            Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            bitmap.recycle();
+            bitmap = converted;
+        }
+        boolean rgb565 = bitmap.getConfig() == Bitmap.Config.RGB_565;
+        int bytes = bitmap.getRowBytes() * bitmap.getHeight();
+
+        ByteBuffer pixels = obtainBuffer(bytes);
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.flip();
+
+        TextureImage image = new TextureImage(bitmap.getWidth(), bitmap.getHeight(), rgb565, pixels);
+        bitmap.recycle();
+        return image;
+    }
+
+    private static ByteBuffer obtainBuffer(int bytes) {
+        synchronized (spareBuffers) {
+            for (int i = 0; i < spareBuffers.size(); i++) {
+                ByteBuffer buffer = spareBuffers.get(i);
+                if (buffer.capacity() >= bytes) {
+                    spareBuffers.remove(i);
+                    buffer.clear();
+                    buffer.limit(bytes);
+                    return buffer;
+                }
+            }
+        }
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Hands the pixel buffer back for reuse; the image must not be used afterwards
+     */
+    public void release() {
+        ByteBuffer buffer = pixels;
+        pixels = null;
+        if (buffer == null) {
+            return;
+        }
+        synchronized (spareBuffers) {
+            if (spareBuffers.size() >= MAX_SPARE_BUFFERS) {
+                // Keep the largest, it fits every texture decoded so far
+                if (spareBuffers.get(0).capacity() >= buffer.capacity()) {
+                    return;
+                }
+                spareBuffers.remove(0);
+            }
+            spareBuffers.add(buffer);
+        }
+    }
+
+    /**
+     * Turns texels that are too dark or too transparent into transparent black
+     * The pixels are premultiplied (as Bitmap stores them), so keyed texels
+     * add nothing under additive blending, which needs no discard. RGB565
+     * images have no alpha; their keyed texels only become black, and the
+     * shaders of other blend modes still discard them.
+     * @param luminanceKey Lowest kept luminance, 0..1
+     * @param alphaKey Lowest kept alpha, 0..1
+     */
+    public void applyLuminanceKey(float luminanceKey, float alphaKey) {
+        if (rgb565) {
+            ShortBuffer texels = pixels.asShortBuffer();
+            for (int i = 0; i < texels.limit(); i++) {
+                int texel = texels.get(i) & 0xFFFF;
+                int r = texel >>> 11;
+                int g = (texel >>> 5) & 0x3F;
+                int b = texel & 0x1F;
+                if (getLuminance((r << 3) | (r >>> 2), (g << 2) | (g >>> 4), (b << 3) | (b >>> 2)) < luminanceKey) {
+                    texels.put(i, (short) 0);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i + 3 < pixels.limit(); i += 4) {
+            int alpha = pixels.get(i + 3) & 0xFF;
+            if (alpha / 255f < alphaKey
+                    || getLuminance(pixels.get(i) & 0xFF, pixels.get(i + 1) & 0xFF, pixels.get(i + 2) & 0xFF)
+                            < luminanceKey) {
+                pixels.putInt(i, 0);
+            }
+        }
+    }
+
+    private static float getLuminance(int red, int green, int blue) {
+        return (0.299f * red + 0.587f * green + 0.114f * blue) / 255f;
+    }
+
+    /**
+     * Gets the number of levels of a full mip chain
+     */
+    public int getLevelCount() {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Gets the GPU bytes of the uploaded texture including all mip levels
+     */
+    public long getTextureBytes() {
+        return TextureUtils.getMipChainBytes(width, height, rgb565 ? 2 : 4);
+    }
+
+    /**
+     * Allocates immutable storage with a full mip chain for the texture bound
+     * to GL_TEXTURE_2D and uploads level 0; call glGenerateMipmap afterwards
+     */
+    public void upload() {
+        GLES32.glTexStorage2D(GLES32.GL_TEXTURE_2D, getLevelCount(), rgb565 ? GLES32.GL_RGB565 : GLES32.GL_RGBA8,
+                width, height);
+        // RGB565 rows are only 2-byte aligned
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, rgb565 ? 2 : 4);
+        GLES32.glTexSubImage2D(GLES32.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                rgb565 ? GLES32.GL_RGB : GLES32.GL_RGBA,
+                rgb565 ? GLES32.GL_UNSIGNED_SHORT_5_6_5 : GLES32.GL_UNSIGNED_BYTE, pixels);
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, 4);
+    }
+}
\ No newline at end of file
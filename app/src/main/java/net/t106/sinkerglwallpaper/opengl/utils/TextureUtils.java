@@ -3,25 +3,165 @@ package net.t106.sinkerglwallpaper.opengl.utils;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
+import android.graphics.ImageDecoder;
 import android.opengl.GLES32;
-import android.opengl.GLUtils;
+import android.os.Build;
 import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Texture utility class for OpenGL ES 3.2
  * Handles texture loading, creation, and management
+ *
+ * Loaded textures are sized for the pixels they cover: callers pass the
+ * largest projected on-screen size (targetSize), larger images are reduced
+ * by power-of-two steps, and every loaded texture has mipmaps so minified
+ * sampling reads from a level that fits the screen. The GPU memory of each
+ * texture is tracked, see getResidentTextures().
+ *
+ * Resources are decoded at their upload size (ImageDecoder from Android 9,
+ * BitmapFactory before) and copied into a reused direct buffer, then
+ * uploaded into immutable storage. No pixels are kept after upload: a
+ * preserved context keeps its textures, and a new share group decodes again.
+ *
+ * Textures are luminance-keyed once when decoded (the compressTextures
+ * build task does the same for compressed assets): texels darker than
+ * LUMINANCE_KEY become transparent black, so additive shaders need no
+ * discard. Other blend modes still discard keyed texels, since opaque
+ * textures have no alpha to carry the key.
  */
 public class TextureUtils {
     private static final String TAG = "TextureUtils";
     
+    // Compressed variants written by the compressTextures build task, best first
+    private static final String TEXTURE_ASSET_DIRECTORY = "textures/";
+    private static final String ASTC_SUFFIX = ".astc.ktx";
+    private static final String ETC2_SUFFIX = ".etc2.ktx";
+    private static final String[] COMPRESSED_SUFFIXES = { ASTC_SUFFIX, ETC2_SUFFIX };
+    
+    private static volatile Boolean astcSupported;
+    
+    // Texels below either key are transparent; must match CompressTexturesTask's luminanceKey
+    public static final float LUMINANCE_KEY = 0.1f;
+    public static final float ALPHA_KEY = 0.01f;
+    
+    // GPU bytes and description of each live texture, by handle
+    private static final Map<Integer, ResidentTexture> residentTextures = new LinkedHashMap<>();
+    
+    private static class ResidentTexture {
+        final String description;
+        final long bytes;
+        
+        ResidentTexture(String description, long bytes) {
+            this.description = description;
+            this.bytes = bytes;
+        }
+    }
+    
+    /**
+     * Loads a texture from its best supported compressed asset, or from a PNG resource
+     * ETC2 is core in OpenGL ES 3 and always usable; ASTC is used where the driver
+     * supports it. The resource is only decoded if no compressed asset loads.
+     * @param context Application context
+     * @param name Texture name, i.e. the resource's file name without extension
+     * @param resourceId Resource ID of the PNG fallback
+     * @param targetSize Largest on-screen size in pixels, or 0 for full resolution
+     * @param opaque True if the image has no alpha channel
+     * @return OpenGL texture handle, or 0 if loading failed
+     */
+    public static int loadTexture(Context context, String name, int resourceId, int targetSize, boolean opaque) {
+        AssetPreloader preloader = AssetPreloader.getInstance();
+        for (String suffix : COMPRESSED_SUFFIXES) {
+            String path = TEXTURE_ASSET_DIRECTORY + name + suffix;
+            // Always take the preloaded copy, so unsupported ones are dropped too
+            byte[] data = preloader.takeAsset(path);
+            if (ASTC_SUFFIX.equals(suffix) && !isAstcSupported()) {
+                continue;
+            }
+            if (data == null) {
+                data = AssetPreloader.readAsset(context, path);
+            }
+            if (data != null) {
+                int texture = KtxLoader.createTexture(data, targetSize);
+                if (texture != 0) {
+                    return texture;
+                }
+            }
+        }
+        Log.w(TAG, "No compressed asset for " + name + ", decoding PNG");
+        return loadTexture(context, resourceId, targetSize, opaque);
+    }
+    
+    /**
+     * Starts reading the data loadTexture(context, name, resourceId, ...) will use
+     * Picks the best compressed asset present (support is only known once a
+     * context exists) or the PNG resource; may be called before EGL is up.
+     */
+    public static void preloadTexture(Context context, String name, int resourceId, int targetSize,
+                                      boolean opaque) {
+        AssetPreloader preloader = AssetPreloader.getInstance();
+        for (String suffix : COMPRESSED_SUFFIXES) {
+            String path = TEXTURE_ASSET_DIRECTORY + name + suffix;
+            if (assetExists(context, path)) {
+                preloader.preloadAsset(context, path);
+                return;
+            }
+        }
+        preloader.preloadImage(context, resourceId, targetSize, opaque);
+    }
+    
+    private static boolean assetExists(Context context, String path) {
+        int slash = path.lastIndexOf('/');
+        try {
+            String[] files = context.getAssets().list(path.substring(0, slash));
+            if (files != null) {
+                for (String file : files) {
+                    if (file.equals(path.substring(slash + 1))) {
+                        return true;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to list " + path, e);
+        }
+        return false;
+    }
+    
+    /**
+     * Checks for ASTC LDR support; must be called with a context current
+     */
+    public static boolean isAstcSupported() {
+        if (astcSupported == null) {
+            String extensions = GLES32.glGetString(GLES32.GL_EXTENSIONS);
+            astcSupported = extensions != null && extensions.contains("GL_KHR_texture_compression_astc_ldr");
+        }
+        return astcSupported;
+    }
+    
     /**
-     * Loads a texture from resources and creates an OpenGL texture
+     * Loads a texture from resources at full resolution and creates an OpenGL texture
      * @param context Application context
      * @param resourceId Resource ID of the image
      * @return OpenGL texture handle, or 0 if loading failed
      */
     public static int loadTexture(Context context, int resourceId) {
+        return loadTexture(context, resourceId, 0, false);
+    }
+    
+    /**
+     * Loads a texture from resources, sized for its on-screen footprint, with mipmaps
+     * @param context Application context
+     * @param resourceId Resource ID of the image
+     * @param targetSize Largest on-screen size in pixels, or 0 for full resolution
+     * @param opaque True if the image has no alpha channel
+     * @return OpenGL texture handle, or 0 if loading failed
+     */
+    public static int loadTexture(Context context, int resourceId, int targetSize, boolean opaque) {
         int[] textures = new int[1];
         GLES32.glGenTextures(1, textures, 0);
         
@@ -30,76 +170,183 @@ public class TextureUtils {
             return 0;
         }
         
-        Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId);
-        if (bitmap == null) {
+        // Decoded ahead of time if the engine preloaded it
+        TextureImage image = AssetPreloader.getInstance().takeImage(resourceId);
+        if (image == null) {
+            image = decodeImage(context, resourceId, targetSize, opaque);
+        }
+        if (image == null) {
             Log.e(TAG, "Failed to decode resource " + resourceId);
             GLES32.glDeleteTextures(1, textures, 0);
             return 0;
         }
+        GLStateCache.current().bindTexture(0, textures[0]);
         
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textures[0]);
-        
-        // Set texture parameters
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_LINEAR);
+        // Set texture parameters; minified sampling reads the mip chain
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_LINEAR_MIPMAP_LINEAR);
         GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_LINEAR);
         GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
         GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
         
-        // Upload bitmap to GPU
-        GLUtils.texImage2D(GLES32.GL_TEXTURE_2D, 0, bitmap, 0);
+        // Upload pixels to GPU; the driver has its own copy afterwards
+        image.upload();
+        image.release();
+        GLES32.glGenerateMipmap(GLES32.GL_TEXTURE_2D);
         
-        bitmap.recycle();
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, 0);
+        trackTexture(textures[0], String.format(Locale.US, "resource %d: %dx%d %s", resourceId, image.width,
+                image.height, image.rgb565 ? "RGB565" : "RGBA8888"), image.getTextureBytes());
         
         return textures[0];
     }
     
     /**
-     * Loads a texture and its horizontally flipped version
-     * @param context Application context
-     * @param resourceId Resource ID of the image
-     * @return Array containing [original texture, flipped texture], or null if loading failed
+     * Decodes a resource into a luminance-keyed TextureImage, see decodeBitmap()
+     * The caller owns the image and releases it once uploaded. Safe to call on any thread.
+     * @return Decoded image, or null if decoding failed
      */
-    public static int[] loadTextureWithFlipped(Context context, int resourceId) {
-        int[] textures = new int[2];
-        GLES32.glGenTextures(2, textures, 0);
-        
-        if (textures[0] == 0 || textures[1] == 0) {
-            Log.e(TAG, "Failed to generate textures");
+    public static TextureImage decodeImage(Context context, int resourceId, int targetSize, boolean opaque) {
+        Bitmap bitmap = decodeBitmap(context, resourceId, targetSize, opaque);
+        if (bitmap == null) {
             return null;
         }
+        TextureImage image = TextureImage.fromBitmap(bitmap);
+        image.applyLuminanceKey(LUMINANCE_KEY, ALPHA_KEY);
+        return image;
+    }
+    
+    /**
+     * Decodes a resource for a texture covering at most targetSize pixels on screen
+     * The image is not density-scaled. It is reduced by the largest power of two
+     * that keeps it at least targetSize, and opaque images that end up minified
+     * are decoded as RGB_565: mip filtering averages away the lost precision.
+     * Safe to call on any thread.
+     * @return Decoded bitmap, or null if decoding failed
+     */
+    public static Bitmap decodeBitmap(Context context, int resourceId, int targetSize, boolean opaque) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return decodeBitmapWithImageDecoder(context, resourceId, targetSize, opaque);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(context.getResources(), resourceId, options);
         
-        Bitmap originalBitmap = BitmapFactory.decodeResource(context.getResources(), resourceId);
-        if (originalBitmap == null) {
-            Log.e(TAG, "Failed to decode resource " + resourceId);
-            GLES32.glDeleteTextures(2, textures, 0);
+        int size = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = getSampleSize(size, targetSize);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        boolean minified = targetSize > 0 && size / sampleSize > targetSize;
+        options.inPreferredConfig = opaque && minified ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        return BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+    }
+    
+    /**
+     * decodeBitmap() on Android 9+: the decoder scales while decoding and picks
+     * RGB_565 itself for opaque images under MEMORY_POLICY_LOW_RAM
+     */
+    private static Bitmap decodeBitmapWithImageDecoder(Context context, int resourceId, int targetSize,
+                                                       boolean opaque) {
+        try {
+            return ImageDecoder.decodeBitmap(ImageDecoder.createSource(context.getResources(), resourceId),
+                    (decoder, info, source) -> {
+                        int width = info.getSize().getWidth();
+                        int height = info.getSize().getHeight();
+                        int size = Math.max(width, height);
+                        int sampleSize = getSampleSize(size, targetSize);
+                        // The pixels are copied out at once; hardware bitmaps cannot be read
+                        decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                        // Also replaces the density scaling applied to resources
+                        decoder.setTargetSize(Math.max(1, width / sampleSize), Math.max(1, height / sampleSize));
+                        if (opaque && targetSize > 0 && size / sampleSize > targetSize) {
+                            decoder.setMemorySizePolicy(ImageDecoder.MEMORY_POLICY_LOW_RAM);
+                        }
+                    });
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to decode resource " + resourceId, e);
             return null;
         }
-        
-        // Create flipped bitmap
-        Matrix flipMatrix = new Matrix();
-        flipMatrix.preScale(-1, 1);
-        Bitmap flippedBitmap = Bitmap.createBitmap(originalBitmap, 0, 0, 
-                                                  originalBitmap.getWidth(), 
-                                                  originalBitmap.getHeight(), 
-                                                  flipMatrix, false);
-        
-        // Upload original texture
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textures[0]);
-        setDefaultTextureParameters();
-        GLUtils.texImage2D(GLES32.GL_TEXTURE_2D, 0, originalBitmap, 0);
-        
-        // Upload flipped texture
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textures[1]);
-        setDefaultTextureParameters();
-        GLUtils.texImage2D(GLES32.GL_TEXTURE_2D, 0, flippedBitmap, 0);
-        
-        // Cleanup
-        originalBitmap.recycle();
-        flippedBitmap.recycle();
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, 0);
-        
-        return textures;
+    }
+    
+    /**
+     * Gets the largest power-of-two reduction that keeps an image at least targetSize
+     * @param size Largest image dimension
+     * @param targetSize Largest on-screen size in pixels, or 0 for no reduction
+     */
+    public static int getSampleSize(int size, int targetSize) {
+        int sampleSize = 1;
+        if (targetSize > 0) {
+            while (size / (sampleSize * 2) >= targetSize) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+    
+    /**
+     * Gets the bytes of an uncompressed texture including all mip levels
+     */
+    static long getMipChainBytes(int width, int height, int bytesPerPixel) {
+        long bytes = 0;
+        while (true) {
+            bytes += (long) width * height * bytesPerPixel;
+            if (width == 1 && height == 1) {
+                return bytes;
+            }
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+    }
+    
+    /**
+     * Records the GPU memory of a texture created outside the load methods above
+     */
+    public static void trackTexture(int handle, String description, long bytes) {
+        synchronized (residentTextures) {
+            residentTextures.put(handle, new ResidentTexture(description, bytes));
+        }
+        Log.d(TAG, "Texture " + handle + " (" + description + "): " + bytes + " bytes resident");
+    }
+    
+    private static void untrackTexture(int handle) {
+        synchronized (residentTextures) {
+            residentTextures.remove(handle);
+        }
+    }
+    
+    /**
+     * Forgets all tracked textures; call when the share group is destroyed with them
+     */
+    public static void clearResidentTextures() {
+        synchronized (residentTextures) {
+            residentTextures.clear();
+        }
+    }
+    
+    /**
+     * Gets the GPU bytes of all live textures
+     */
+    public static long getResidentBytes() {
+        synchronized (residentTextures) {
+            long bytes = 0;
+            for (ResidentTexture texture : residentTextures.values()) {
+                bytes += texture.bytes;
+            }
+            return bytes;
+        }
+    }
+    
+    /**
+     * Describes every live texture with its GPU bytes, one line each
+     */
+    public static List<String> getResidentTextures() {
+        synchronized (residentTextures) {
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<Integer, ResidentTexture> entry : residentTextures.entrySet()) {
+                lines.add("texture " + entry.getKey() + " (" + entry.getValue().description + "): "
+                        + entry.getValue().bytes + " bytes");
+            }
+            return lines;
+        }
     }
     
     /**
@@ -118,13 +365,12 @@ public class TextureUtils {
             return 0;
         }
         
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textures[0]);
+        GLStateCache.current().bindTexture(0, textures[0]);
         setDefaultTextureParameters();
         
         GLES32.glTexImage2D(GLES32.GL_TEXTURE_2D, 0, format, width, height, 0, 
                            GLES32.GL_RGBA, GLES32.GL_UNSIGNED_BYTE, null);
-        
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, 0);
+        trackTexture(textures[0], width + "x" + height + " empty", (long) width * height * 4);
         
         return textures[0];
     }
@@ -140,13 +386,12 @@ public class TextureUtils {
     }
     
     /**
-     * Binds a texture to a specific texture unit
+     * Binds a texture to a specific texture unit; no GL call if it is already bound
      * @param textureUnit Texture unit (0-31)
      * @param textureHandle Texture handle
      */
     public static void bindTexture(int textureUnit, int textureHandle) {
-        GLES32.glActiveTexture(GLES32.GL_TEXTURE0 + textureUnit);
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureHandle);
+        GLStateCache.current().bindTexture(textureUnit, textureHandle);
     }
     
     /**
@@ -154,8 +399,7 @@ public class TextureUtils {
      * @param textureUnit Texture unit (0-31)
      */
     public static void unbindTexture(int textureUnit) {
-        GLES32.glActiveTexture(GLES32.GL_TEXTURE0 + textureUnit);
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, 0);
+        GLStateCache.current().bindTexture(textureUnit, 0);
     }
     
     /**
@@ -163,6 +407,8 @@ public class TextureUtils {
      * @param textureHandle Texture handle to delete
      */
     public static void deleteTexture(int textureHandle) {
+        GLStateCache.current().forgetTexture(textureHandle);
+        untrackTexture(textureHandle);
         int[] textures = {textureHandle};
         GLES32.glDeleteTextures(1, textures, 0);
     }
@@ -172,6 +418,11 @@ public class TextureUtils {
      * @param textureHandles Array of texture handles to delete
      */
     public static void deleteTextures(int[] textureHandles) {
+        GLStateCache state = GLStateCache.current();
+        for (int handle : textureHandles) {
+            state.forgetTexture(handle);
+            untrackTexture(handle);
+        }
         GLES32.glDeleteTextures(textureHandles.length, textureHandles, 0);
     }
     
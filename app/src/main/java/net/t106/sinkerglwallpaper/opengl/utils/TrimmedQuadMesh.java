@@ -0,0 +1,290 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Indexed mesh covering only the visible part of a textured unit quad
+ * The texture is divided into a GRID_SIZE x GRID_SIZE grid; cells within
+ * MARGIN_TEXELS of a texel the luminance key keeps (see
+ * TextureUtils.LUMINANCE_KEY) are kept, so filtering and the
+ * first mip levels never reach past the mesh, and merged into rectangles.
+ * Vertices are texture coordinates; Garland places them on its quad.
+ *
+ * Building needs the full-resolution pixels, so meshes are cached in the
+ * app's cache dir, keyed by a checksum of the resource file.
+ */
+public class TrimmedQuadMesh {
+    private static final String TAG = "TrimmedQuadMesh";
+
+    public static final int GRID_SIZE = 64;
+
+    // Texels kept around visible ones: bilinear filtering plus mip levels 1 and 2
+    private static final int MARGIN_TEXELS = 4;
+
+    // Above this share of the quad a mesh saves too little to pay for its vertices
+    private static final float MAX_COVERAGE = 0.85f;
+
+    private static final String DIRECTORY = "meshes";
+    private static final int MAGIC = 0x53544d31;  // "STM1"
+
+    // Rectangles in grid cells: x0, y0, x1, y1 (exclusive) each
+    private final int[] rects;
+
+    private TrimmedQuadMesh(int[] rects) {
+        this.rects = rects;
+    }
+
+    /**
+     * Gets the mesh of a drawable, from the disk cache or by building it
+     * Decodes the resource on a cache miss; call off the GL thread where possible.
+     * @return Mesh, or null if the quad is mostly visible anyway or the resource is unreadable
+     */
+    public static TrimmedQuadMesh load(Context context, int resourceId) {
+        long checksum = getResourceChecksum(context, resourceId);
+        if (checksum < 0) {
+            return null;
+        }
+        File file = new File(new File(context.getCacheDir(), DIRECTORY), resourceId + ".mesh");
+        int[] cached = read(file, checksum);
+        if (cached != null) {
+            return cached.length > 0 ? new TrimmedQuadMesh(cached) : null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+        if (bitmap == null) {
+            return null;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        TrimmedQuadMesh mesh = build(pixels, width, height);
+        // An empty file records "use the plain quad"
+        write(file, checksum, mesh != null ? mesh.rects : new int[0]);
+        return mesh;
+    }
+
+    /**
+     * Builds the mesh of an image
+     * @param argb Pixels, row by row from the top, 0xAARRGGBB (not premultiplied)
+     * @return Mesh, or null if it would cover more than MAX_COVERAGE of the quad
+     */
+    public static TrimmedQuadMesh build(int[] argb, int width, int height) {
+        // Cells within MARGIN_TEXELS of a visible texel are covered
+        boolean[][] covered = new boolean[GRID_SIZE][GRID_SIZE];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[y * width + x];
+                float alpha = (pixel >>> 24) / 255f;
+                float luminance = (0.299f * ((pixel >> 16) & 0xFF) + 0.587f * ((pixel >> 8) & 0xFF)
+                        + 0.114f * (pixel & 0xFF)) / 255f;
+                if (alpha < TextureUtils.ALPHA_KEY || luminance < TextureUtils.LUMINANCE_KEY) {
+                    continue;
+                }
+                int cellX0 = Math.max(0, x - MARGIN_TEXELS) * GRID_SIZE / width;
+                int cellX1 = Math.min(width - 1, x + MARGIN_TEXELS) * GRID_SIZE / width;
+                int cellY0 = Math.max(0, y - MARGIN_TEXELS) * GRID_SIZE / height;
+                int cellY1 = Math.min(height - 1, y + MARGIN_TEXELS) * GRID_SIZE / height;
+                for (int cellY = cellY0; cellY <= cellY1; cellY++) {
+                    for (int cellX = cellX0; cellX <= cellX1; cellX++) {
+                        covered[cellY][cellX] = true;
+                    }
+                }
+            }
+        }
+        int coveredCells = 0;
+        for (boolean[] row : covered) {
+            for (boolean cell : row) {
+                if (cell) {
+                    coveredCells++;
+                }
+            }
+        }
+        if (coveredCells > MAX_COVERAGE * GRID_SIZE * GRID_SIZE) {
+            return null;
+        }
+
+        // Runs of covered cells per row; a run continuing one of the row above extends it
+        ArrayList<int[]> done = new ArrayList<>();
+        ArrayList<int[]> open = new ArrayList<>();
+        for (int y = 0; y <= GRID_SIZE; y++) {
+            ArrayList<int[]> next = new ArrayList<>();
+            int x = 0;
+            while (y < GRID_SIZE && x < GRID_SIZE) {
+                if (!covered[y][x]) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < GRID_SIZE && covered[y][x]) {
+                    x++;
+                }
+                int[] rect = null;
+                for (int i = 0; i < open.size(); i++) {
+                    int[] candidate = open.get(i);
+                    if (candidate[0] == start && candidate[2] == x) {
+                        rect = open.remove(i);
+                        break;
+                    }
+                }
+                if (rect == null) {
+                    rect = new int[] { start, y, x, y };
+                }
+                rect[3] = y + 1;
+                next.add(rect);
+            }
+            done.addAll(open);
+            open = next;
+        }
+
+        int[] rects = new int[done.size() * 4];
+        for (int i = 0; i < done.size(); i++) {
+            System.arraycopy(done.get(i), 0, rects, i * 4, 4);
+        }
+        return new TrimmedQuadMesh(rects);
+    }
+
+    /**
+     * Gets the number of vertices (four per rectangle)
+     */
+    public int getVertexCount() {
+        return rects.length;
+    }
+
+    /**
+     * Gets the number of indices (two triangles per rectangle)
+     */
+    public int getIndexCount() {
+        return rects.length / 4 * 6;
+    }
+
+    /**
+     * Gets the share of the unit quad the mesh covers
+     */
+    public float getCoverage() {
+        int cells = 0;
+        for (int i = 0; i < rects.length; i += 4) {
+            cells += (rects[i + 2] - rects[i]) * (rects[i + 3] - rects[i + 1]);
+        }
+        return (float) cells / (GRID_SIZE * GRID_SIZE);
+    }
+
+    /**
+     * Gets texture coordinates, u and v per vertex; v = 0 is the top row of the image
+     */
+    public float[] getTexCoords() {
+        float[] uv = new float[rects.length * 2];
+        int offset = 0;
+        for (int i = 0; i < rects.length; i += 4) {
+            float u0 = (float) rects[i] / GRID_SIZE;
+            float v0 = (float) rects[i + 1] / GRID_SIZE;
+            float u1 = (float) rects[i + 2] / GRID_SIZE;
+            float v1 = (float) rects[i + 3] / GRID_SIZE;
+            float[] corners = { u0, v0, u1, v0, u0, v1, u1, v1 };
+            System.arraycopy(corners, 0, uv, offset, corners.length);
+            offset += corners.length;
+        }
+        return uv;
+    }
+
+    /**
+     * Gets triangle indices into the vertices of getTexCoords()
+     */
+    public short[] getIndices() {
+        short[] indices = new short[getIndexCount()];
+        int offset = 0;
+        for (int vertex = 0; vertex < getVertexCount(); vertex += 4) {
+            indices[offset++] = (short) vertex;
+            indices[offset++] = (short) (vertex + 1);
+            indices[offset++] = (short) (vertex + 2);
+            indices[offset++] = (short) (vertex + 2);
+            indices[offset++] = (short) (vertex + 1);
+            indices[offset++] = (short) (vertex + 3);
+        }
+        return indices;
+    }
+
+    private static long getResourceChecksum(Context context, int resourceId) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[16 * 1024];
+        try (InputStream in = context.getResources().openRawResource(resourceId)) {
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                crc.update(chunk, 0, count);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read resource " + resourceId, e);
+            return -1;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * File layout: magic, grid size, resource checksum, rectangle count, rectangles as bytes
+     * @return Cached rectangles (empty for "no mesh"), or null on a miss
+     */
+    private static int[] read(File file, long checksum) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != GRID_SIZE || in.readLong() != checksum) {
+                return null;
+            }
+            int count = in.readInt();
+            if (count < 0 || count > GRID_SIZE * GRID_SIZE) {
+                return null;
+            }
+            int[] rects = new int[count * 4];
+            for (int i = 0; i < rects.length; i++) {
+                rects[i] = in.readUnsignedByte();
+            }
+            return rects;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read mesh " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static void write(File file, long checksum, int[] rects) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        // Write next to the target and rename, so a reader never sees half a file
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(GRID_SIZE);
+            out.writeLong(checksum);
+            out.writeInt(rects.length / 4);
+            for (int value : rects) {
+                out.writeByte(value);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write mesh " + file.getName(), e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+}
\ No newline at end of file
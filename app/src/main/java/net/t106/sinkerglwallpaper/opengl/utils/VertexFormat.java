@@ -0,0 +1,224 @@
+package net.t106.sinkerglwallpaper.opengl.utils;
+
+import android.opengl.GLES32;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Interleaved vertex layout with compact attribute types
+ * All attributes of a mesh live in one VBO; each vertex is stride bytes
+ * and every attribute starts on a 4-byte boundary. Build layouts with
+ * Builder, fill a buffer with pack() and bind it with bindAttributes().
+ */
+public class VertexFormat {
+
+    // Attribute component types
+    public static final int TYPE_FLOAT = 0;        // 4 bytes, any value
+    public static final int TYPE_HALF_FLOAT = 1;   // 2 bytes, ~3 significant digits
+    public static final int TYPE_SHORT_NORM = 2;   // 2 bytes, [-1, 1]
+    public static final int TYPE_USHORT_NORM = 3;  // 2 bytes, [0, 1]
+    public static final int TYPE_UBYTE_NORM = 4;   // 1 byte, [0, 1] (colors)
+
+    private static final int[] TYPE_SIZES = { 4, 2, 2, 2, 1 };
+    private static final int[] GL_TYPES = {
+        GLES32.GL_FLOAT, GLES32.GL_HALF_FLOAT, GLES32.GL_SHORT, GLES32.GL_UNSIGNED_SHORT, GLES32.GL_UNSIGNED_BYTE
+    };
+
+    /**
+     * Quad / hull layout: half-float position, normalized UV (8 bytes per vertex)
+     */
+    public static final VertexFormat POSITION_UV = new Builder()
+        .attribute(0, 2, TYPE_HALF_FLOAT)
+        .attribute(1, 2, TYPE_USHORT_NORM)
+        .build();
+
+    /**
+     * Particle layout: POSITION_UV plus a normalized RGBA color (12 bytes per vertex)
+     */
+    public static final VertexFormat POSITION_UV_COLOR = new Builder()
+        .attribute(0, 2, TYPE_HALF_FLOAT)
+        .attribute(1, 2, TYPE_USHORT_NORM)
+        .attribute(2, 4, TYPE_UBYTE_NORM)
+        .build();
+
+    private final int[] locations;
+    private final int[] components;
+    private final int[] types;
+    private final int[] offsets;
+    private final int stride;
+
+    private VertexFormat(int[] locations, int[] components, int[] types) {
+        this.locations = locations;
+        this.components = components;
+        this.types = types;
+        this.offsets = new int[locations.length];
+        int offset = 0;
+        for (int i = 0; i < locations.length; i++) {
+            offsets[i] = offset;
+            offset += align4(components[i] * TYPE_SIZES[types[i]]);
+        }
+        this.stride = offset;
+    }
+
+    /**
+     * Builds a VertexFormat attribute by attribute, in interleaving order
+     */
+    public static class Builder {
+        private final ArrayList<int[]> attributes = new ArrayList<>();
+
+        /**
+         * @param location Attribute location in shader
+         * @param components Number of components (1-4)
+         * @param type One of the TYPE_ constants
+         */
+        public Builder attribute(int location, int components, int type) {
+            if (components < 1 || components > 4) {
+                throw new IllegalArgumentException("components must be 1-4");
+            }
+            if (type < TYPE_FLOAT || type > TYPE_UBYTE_NORM) {
+                throw new IllegalArgumentException("Unknown attribute type " + type);
+            }
+            attributes.add(new int[] { location, components, type });
+            return this;
+        }
+
+        public VertexFormat build() {
+            int count = attributes.size();
+            int[] locations = new int[count];
+            int[] components = new int[count];
+            int[] types = new int[count];
+            for (int i = 0; i < count; i++) {
+                int[] attribute = attributes.get(i);
+                locations[i] = attribute[0];
+                components[i] = attribute[1];
+                types[i] = attribute[2];
+            }
+            return new VertexFormat(locations, components, types);
+        }
+    }
+
+    /**
+     * Gets the size of one vertex in bytes
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Gets the number of attributes
+     */
+    public int getAttributeCount() {
+        return locations.length;
+    }
+
+    /**
+     * Interleaves and converts per-attribute float data
+     * @param data One array per attribute, in builder order, components per vertex
+     * @param vertexCount Number of vertices
+     * @return Direct buffer of vertexCount * stride bytes, positioned at 0
+     */
+    public ByteBuffer pack(float[][] data, int vertexCount) {
+        if (data.length != locations.length) {
+            throw new IllegalArgumentException("Expected " + locations.length + " attribute arrays");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(vertexCount * stride).order(ByteOrder.nativeOrder());
+        for (int a = 0; a < locations.length; a++) {
+            if (data[a].length < vertexCount * components[a]) {
+                throw new IllegalArgumentException("Attribute " + a + " has too few values");
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            for (int a = 0; a < locations.length; a++) {
+                int position = v * stride + offsets[a];
+                for (int c = 0; c < components[a]; c++) {
+                    position = put(buffer, position, types[a], data[a][v * components[a] + c]);
+                }
+            }
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    /**
+     * Points the attributes at the GL_ARRAY_BUFFER currently bound and enables them
+     * Call with the target VAO bound
+     */
+    public void bindAttributes() {
+        for (int a = 0; a < locations.length; a++) {
+            int type = types[a];
+            boolean normalized = type == TYPE_SHORT_NORM || type == TYPE_USHORT_NORM || type == TYPE_UBYTE_NORM;
+            GLES32.glVertexAttribPointer(locations[a], components[a], GL_TYPES[type], normalized, stride, offsets[a]);
+            GLES32.glEnableVertexAttribArray(locations[a]);
+        }
+    }
+
+    private static int put(ByteBuffer buffer, int position, int type, float value) {
+        switch (type) {
+            case TYPE_FLOAT:
+                buffer.putFloat(position, value);
+                return position + 4;
+            case TYPE_HALF_FLOAT:
+                buffer.putShort(position, toHalf(value));
+                return position + 2;
+            case TYPE_SHORT_NORM:
+                buffer.putShort(position, (short) Math.round(clamp(value, -1.0f, 1.0f) * 32767.0f));
+                return position + 2;
+            case TYPE_USHORT_NORM:
+                buffer.putShort(position, (short) Math.round(clamp(value, 0.0f, 1.0f) * 65535.0f));
+                return position + 2;
+            default:
+                buffer.put(position, (byte) Math.round(clamp(value, 0.0f, 1.0f) * 255.0f));
+                return position + 1;
+        }
+    }
+
+    /**
+     * Converts a float to IEEE 754 half precision, rounding to nearest even
+     * (android.util.Half needs API 26)
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            // Infinity or NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);  // overflow to infinity
+        }
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;  // underflow to zero
+            }
+            // Subnormal half
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;  // may carry into the exponent, which is still correct
+        }
+        return (short) (sign | half);
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int align4(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+}
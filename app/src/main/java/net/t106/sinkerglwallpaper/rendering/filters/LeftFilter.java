@@ -1,8 +1,9 @@
 package net.t106.sinkerglwallpaper.rendering.filters;
-import android.opengl.GLES32;
+import net.t106.sinkerglwallpaper.config.BlendModeManager;
 import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
 import net.t106.sinkerglwallpaper.opengl.utils.BufferUtils;
 import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+import net.t106.sinkerglwallpaper.rendering.queue.RenderQueue;
 import net.t106.sinkerglwallpaper.rendering.services.AThingLeftBehindService;
 import net.t106.sinkerglwallpaper.rendering.objects.Garland;
 
@@ -13,6 +14,9 @@ import net.t106.sinkerglwallpaper.rendering.objects.Garland;
 public class LeftFilter extends Garland {
 
 	private boolean isSmallSize = false;
+	
+	// Overlay color, added to the garlands below
+	private static final float[] COLOR = { 0.2f, 0.4f, 0.60f, 0.4f };
 
 	public LeftFilter()
 	{
@@ -30,7 +34,8 @@ public class LeftFilter extends Garland {
 	@Override
 	protected void createShaderProgram() {
 		// Use color shader program for color-only rendering
-		shaderProgram = ShaderLoader.Programs.createColorProgram(AThingLeftBehindService.getContext());
+		shaderProgram = ShaderLoader.Programs.acquireColorProgram(AThingLeftBehindService.getContext(), resources,
+			BlendModeManager.BLEND_ADDITIVE);
 	}
 	
 	@Override
@@ -42,15 +47,23 @@ public class LeftFilter extends Garland {
 		// Bind shader and set uniforms
 		bindShader();
 
-		GLES32.glEnable(GLES32.GL_BLEND);
-
-		ShaderUtils.setUniform4f(colorLocation, 0.2f, 0.4f, 0.60f, 0.4f);
-		GLES32.glBlendFunc(GLES32.GL_ONE, GLES32.GL_ONE);
+		ShaderUtils.setUniform4f(colorLocation, COLOR[0], COLOR[1], COLOR[2], COLOR[3]);
+		BlendModeManager.applyBlendMode(BlendModeManager.BLEND_ADDITIVE);
 		BufferUtils.bindVAO(vao);
 		BufferUtils.drawQuad();
-		BufferUtils.unbindVAO();
+	}
 
-		GLES32.glDisable(GLES32.GL_BLEND);
+	@Override
+	public void submit(RenderQueue queue) {
+		queue.submit(this, 0, RenderQueue.LAYER_ADDITIVE, shaderProgram, 0,
+			BlendModeManager.BLEND_ADDITIVE, profilerPhase);
+	}
+
+	/**
+	 * Gets the overlay color (red, green, blue, alpha), blended additively
+	 */
+	public float[] getColor() {
+		return COLOR.clone();
 	}
 
 	@Override
@@ -73,10 +86,7 @@ public class LeftFilter extends Garland {
 		// Update buffer
 		ab = AThingLeftBehindService.makeFloatBuffer(apex);
 		
-		// Recreate VAO with new vertex data
-		if (vao != 0) {
-			BufferUtils.deleteVAO(vao);
-			createBuffers();
-		}
+		// Switch to the geometry for the new vertex data
+		rebuildBuffers();
 	}
 }
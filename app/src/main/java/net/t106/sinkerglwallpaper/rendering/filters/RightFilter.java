@@ -1,24 +1,42 @@
 package net.t106.sinkerglwallpaper.rendering.filters;
-import android.opengl.GLES32;
+import net.t106.sinkerglwallpaper.config.BlendModeManager;
 import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
 import net.t106.sinkerglwallpaper.opengl.utils.BufferUtils;
 import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+import net.t106.sinkerglwallpaper.rendering.queue.RenderQueue;
 import net.t106.sinkerglwallpaper.rendering.services.AThingLeftBehindService;
 import net.t106.sinkerglwallpaper.rendering.objects.Garland;
 
 /**
  * Right side filter for OpenGL ES 3.2
  * Renders a vertical colored strip on the right side with invert blend mode
+ * Where the driver has framebuffer fetch the multiply and invert passes run
+ * as one programmable blend (BlendModeManager.BLEND_MULTIPLY_INVERT);
+ * otherwise the strip is drawn twice with fixed-function blending.
  */
 public class RightFilter extends Garland {
 
 	private boolean isSmallSize = false;
 	
+	// Darken the strip, then invert it
+	private static final int PASS_MULTIPLY = 0;
+	private static final int PASS_INVERT = 1;
+	private static final int PASS_MULTIPLY_INVERT = 2;
+	
+	// True if shaderProgram is the framebuffer fetch program doing both passes
+	private boolean singlePass;
+	private int multiplyColorLocation;
+	private int invertColorLocation;
+	
 	// Filter color (pinkish)
 	private static final float RED = 1.0f;
 	private static final float GREEN = 0.5f;
 	private static final float BLUE = 0.5f;
 	private static final float ALPHA = 0.5f;
+	
+	// Colors of the two passes
+	private static final float[] MULTIPLY_COLOR = { 0.2f, 0.4f, 0.60f, 0.4f };
+	private static final float[] INVERT_COLOR = { 0.85f, 0.85f, 0.85f, 1.00f };
 
 	public RightFilter()
 	{
@@ -35,34 +53,104 @@ public class RightFilter extends Garland {
 	
 	@Override
 	protected void createShaderProgram() {
+		singlePass = false;
+		String framebufferFetch = BlendModeManager.getFramebufferFetchDefine();
+		if (framebufferFetch != null) {
+			shaderProgram = ShaderLoader.Programs.acquireMultiplyInvertProgram(
+				AThingLeftBehindService.getContext(), resources, framebufferFetch);
+			singlePass = shaderProgram != 0;
+			if (singlePass) {
+				return;
+			}
+			android.util.Log.w("RightFilter", "Framebuffer fetch program failed, using two passes");
+		}
 		// Use color shader program for color-only rendering
-		shaderProgram = ShaderLoader.Programs.createColorProgram(AThingLeftBehindService.getContext());
+		// Both passes blend in fixed function, so the plain (additive) variant shared
+		// with LeftFilter is enough
+		shaderProgram = ShaderLoader.Programs.acquireColorProgram(AThingLeftBehindService.getContext(), resources,
+			BlendModeManager.BLEND_ADDITIVE);
+	}
+	
+	@Override
+	protected void loadUniformLocations() {
+		super.loadUniformLocations();
+		if (singlePass) {
+			multiplyColorLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_multiplyColor");
+			invertColorLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_invertColor");
+		}
 	}
 	
 	@Override
 	public void Draw(float[] viewMatrix, float[] projectionMatrix) {
+		if (singlePass) {
+			drawPass(PASS_MULTIPLY_INVERT, viewMatrix, projectionMatrix);
+			return;
+		}
+		drawPass(PASS_MULTIPLY, viewMatrix, projectionMatrix);
+		drawPass(PASS_INVERT, viewMatrix, projectionMatrix);
+	}
+
+	@Override
+	public void submit(RenderQueue queue) {
+		if (singlePass) {
+			queue.submit(this, PASS_MULTIPLY_INVERT, RenderQueue.LAYER_MULTIPLY, shaderProgram, 0,
+				BlendModeManager.BLEND_MULTIPLY_INVERT, profilerPhase);
+			return;
+		}
+		// The passes depend on what is below them, so each gets its own layer
+		queue.submit(this, PASS_MULTIPLY, RenderQueue.LAYER_MULTIPLY, shaderProgram, 0,
+			BlendModeManager.BLEND_MULTIPLICATIVE, profilerPhase);
+		queue.submit(this, PASS_INVERT, RenderQueue.LAYER_INVERT, shaderProgram, 0,
+			BlendModeManager.BLEND_INVERT, profilerPhase);
+	}
+
+	@Override
+	public void drawPass(int pass, float[] viewMatrix, float[] projectionMatrix) {
 		// Update MVP matrix (no rotation, just basic transformation)
 		updateMVP(viewMatrix, projectionMatrix);
 		
 		// Bind shader and set uniforms
 		bindShader();
 
-		GLES32.glEnable(GLES32.GL_BLEND);
-
-		ShaderUtils.setUniform4f(colorLocation, 0.2f, 0.4f, 0.60f, 0.4f);
-		GLES32.glBlendFunc(GLES32.GL_ZERO, GLES32.GL_SRC_COLOR);
+		if (pass == PASS_MULTIPLY_INVERT) {
+			ShaderUtils.setUniform4f(multiplyColorLocation,
+				MULTIPLY_COLOR[0], MULTIPLY_COLOR[1], MULTIPLY_COLOR[2], MULTIPLY_COLOR[3]);
+			ShaderUtils.setUniform4f(invertColorLocation,
+				INVERT_COLOR[0], INVERT_COLOR[1], INVERT_COLOR[2], INVERT_COLOR[3]);
+			BlendModeManager.applyBlendMode(BlendModeManager.BLEND_MULTIPLY_INVERT);
+		} else if (pass == PASS_MULTIPLY) {
+			ShaderUtils.setUniform4f(colorLocation,
+				MULTIPLY_COLOR[0], MULTIPLY_COLOR[1], MULTIPLY_COLOR[2], MULTIPLY_COLOR[3]);
+			BlendModeManager.applyBlendMode(BlendModeManager.BLEND_MULTIPLICATIVE);
+		} else {
+			ShaderUtils.setUniform4f(colorLocation,
+				INVERT_COLOR[0], INVERT_COLOR[1], INVERT_COLOR[2], INVERT_COLOR[3]);
+			BlendModeManager.applyBlendMode(BlendModeManager.BLEND_INVERT);
+		}
 		BufferUtils.bindVAO(vao);
 		BufferUtils.drawQuad();
-		BufferUtils.unbindVAO();
+	}
 
-		ShaderUtils.setUniform4f(colorLocation, 0.85f, 0.85f, 0.85f, 1.00f);
-		GLES32.glBlendFunc(GLES32.GL_ONE_MINUS_DST_COLOR, GLES32.GL_ZERO);
-		BufferUtils.bindVAO(vao);
-		BufferUtils.drawQuad();
-		BufferUtils.unbindVAO();
-		
-		// Disable blending
-		GLES32.glDisable(GLES32.GL_BLEND);
+	/**
+	 * Checks whether the filter blends in one framebuffer fetch pass
+	 * Valid once initGL() has run
+	 */
+	public boolean isSinglePass() {
+		return singlePass;
+	}
+	
+	/**
+	 * Gets the color the first pass multiplies the destination with
+	 */
+	public float[] getMultiplyColor() {
+		return MULTIPLY_COLOR.clone();
+	}
+	
+	/**
+	 * Gets the color the second pass scales the inverted destination with
+	 */
+	public float[] getInvertColor() {
+		return INVERT_COLOR.clone();
 	}
 
 	@Override
@@ -85,10 +173,7 @@ public class RightFilter extends Garland {
 		// Update buffer
 		ab = AThingLeftBehindService.makeFloatBuffer(apex);
 		
-		// Recreate VAO with new vertex data
-		if (vao != 0) {
-			BufferUtils.deleteVAO(vao);
-			createBuffers();
-		}
+		// Switch to the geometry for the new vertex data
+		rebuildBuffers();
 	}
 }
@@ -0,0 +1,187 @@
+package net.t106.sinkerglwallpaper.rendering.objects;
+
+import android.opengl.GLES32;
+import android.opengl.Matrix;
+import java.util.Arrays;
+import net.t106.sinkerglwallpaper.config.BlendModeManager;
+import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+import net.t106.sinkerglwallpaper.opengl.utils.BufferUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.GLStateCache;
+import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.TextureUtils;
+import net.t106.sinkerglwallpaper.rendering.filters.LeftFilter;
+import net.t106.sinkerglwallpaper.rendering.filters.RightFilter;
+import net.t106.sinkerglwallpaper.rendering.queue.RenderQueue;
+import net.t106.sinkerglwallpaper.rendering.services.AThingLeftBehindService;
+
+/**
+ * Draws the whole scene in one full-screen pass
+ * Alternative to drawing the garland batch, the left filter and both right
+ * filter passes as separate blended quads: fused_fragment.glsl finds each
+ * pixel's point on the z = 0 plane and evaluates the garland samples, the
+ * additive overlay and the multiply / invert math itself, writing every
+ * pixel once with blending off. The result matches the multi-pass path up
+ * to the 8-bit rounding the framebuffer applies between blended passes.
+ *
+ * The objects passed in still own their state: they are updated as usual
+ * and read every frame, but never draw. The batch must be additive.
+ */
+public class FusedCompositor extends Garland {
+
+    // Floats GarlandBatch writes per garland, see RotatingGarland.writeInstance()
+    private static final int INSTANCE_FLOATS = 16 + 4 + 4 + 1;
+
+    private final GarlandBatch garlands;
+    private final LeftFilter leftFilter;
+    private final RightFilter rightFilter;
+
+    // Filter colors are constants of the filters
+    private final float[] leftColor;
+    private final float[] multiplyColor;
+    private final float[] invertColor;
+
+    // Per-frame uniform data; sized when the program is created
+    private int garlandCount;
+    private final float[] instance = new float[INSTANCE_FLOATS];
+    private float[] inverseModels = new float[0];
+    private float[] garlandColors = new float[0];
+    private float[] garlandUvTransforms = new float[0];
+    private int[] garlandTextures = new int[0];
+    private final float[] viewProjection = new float[16];
+    private final float[] inverseViewProjection = new float[16];
+    private final float[] bounds = new float[4];
+
+    private int inverseViewProjectionLocation;
+    private int texture1Location;
+    private int garlandInverseModelLocation;
+    private int garlandColorLocation;
+    private int garlandUvTransformLocation;
+    private int garlandTextureLocation;
+    private int leftBoundsLocation;
+    private int leftColorLocation;
+    private int rightBoundsLocation;
+    private int multiplyColorLocation;
+    private int invertColorLocation;
+
+    public FusedCompositor(GarlandBatch garlands, LeftFilter leftFilter, RightFilter rightFilter) {
+        super();
+        if (garlands.getBlendMode() != BlendModeManager.BLEND_ADDITIVE) {
+            throw new IllegalArgumentException("Fused compositing needs an additive garland batch, not "
+                + BlendModeManager.getBlendModeName(garlands.getBlendMode()));
+        }
+        this.garlands = garlands;
+        this.leftFilter = leftFilter;
+        this.rightFilter = rightFilter;
+        leftColor = leftFilter.getColor();
+        multiplyColor = rightFilter.getMultiplyColor();
+        invertColor = rightFilter.getInvertColor();
+    }
+
+    /**
+     * Checks whether the program and VAO exist, i.e. whether the fused path can draw
+     */
+    public boolean isReady() {
+        return shaderProgram != 0 && vao != 0;
+    }
+
+    @Override
+    protected void createShaderProgram() {
+        // The garland count is compiled in; the batch does not change after setup
+        garlandCount = Math.max(1, garlands.size());
+        inverseModels = new float[garlandCount * 16];
+        garlandColors = new float[garlandCount * 4];
+        garlandUvTransforms = new float[garlandCount * 4];
+        garlandTextures = new int[garlandCount];
+        shaderProgram = ShaderLoader.Programs.acquireFusedProgram(AThingLeftBehindService.getContext(), resources,
+            garlandCount);
+    }
+
+    @Override
+    protected void loadUniformLocations() {
+        super.loadUniformLocations();
+        inverseViewProjectionLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_inverseViewProjection");
+        texture1Location = ShaderLoader.getUniformLocation(shaderProgram, "u_texture1");
+        garlandInverseModelLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_garlandInverseModel");
+        garlandColorLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_garlandColor");
+        garlandUvTransformLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_garlandUvTransform");
+        garlandTextureLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_garlandTexture");
+        leftBoundsLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_leftBounds");
+        leftColorLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_leftColor");
+        rightBoundsLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_rightBounds");
+        multiplyColorLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_multiplyColor");
+        invertColorLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_invertColor");
+    }
+
+    @Override
+    protected void createBuffers() {
+        // The full-screen triangle comes from gl_VertexID; the VAO stays empty
+        vao = BufferUtils.createVAO();
+    }
+
+    @Override
+    public void Update(float deltaTime) {
+        // The garlands and filters are updated by their owner
+    }
+
+    @Override
+    public void submit(RenderQueue queue) {
+        // Blending is off, the blend mode field only groups the item
+        queue.submit(this, 0, RenderQueue.LAYER_ADDITIVE, shaderProgram, 0,
+            BlendModeManager.BLEND_ADDITIVE, profilerPhase);
+    }
+
+    @Override
+    public void Draw(float[] viewMatrix, float[] projectionMatrix) {
+        if (!isReady()) {
+            return;
+        }
+        Matrix.multiplyMM(viewProjection, 0, projectionMatrix, 0, viewMatrix, 0);
+        Matrix.invertM(inverseViewProjection, 0, viewProjection, 0);
+
+        int count = Math.min(garlandCount, garlands.size());
+        for (int i = 0; i < garlandCount; i++) {
+            if (i >= count) {
+                // Unused slot: a texture-less garland with zero color adds nothing
+                Matrix.setIdentityM(inverseModels, i * 16);
+                Arrays.fill(garlandColors, i * 4, i * 4 + 4, 0.0f);
+                garlandTextures[i] = -1;
+                continue;
+            }
+            garlands.get(i).writeInstance(instance, 0);
+            Matrix.invertM(inverseModels, i * 16, instance, 0);
+            System.arraycopy(instance, 16, garlandColors, i * 4, 4);
+            System.arraycopy(instance, 20, garlandUvTransforms, i * 4, 4);
+            garlandTextures[i] = (int) instance[24];
+        }
+
+        BlendModeManager.disableBlending();
+        GLStateCache.current().useProgram(shaderProgram);
+        ShaderUtils.setUniformMatrix4fv(inverseViewProjectionLocation, inverseViewProjection);
+        ShaderUtils.setUniform1i(textureLocation, 0);
+        ShaderUtils.setUniform1i(texture1Location, 1);
+        ShaderUtils.setUniformMatrix4fv(garlandInverseModelLocation, garlandCount, inverseModels);
+        ShaderUtils.setUniform4fv(garlandColorLocation, garlandCount, garlandColors);
+        ShaderUtils.setUniform4fv(garlandUvTransformLocation, garlandCount, garlandUvTransforms);
+        ShaderUtils.setUniform1iv(garlandTextureLocation, garlandCount, garlandTextures);
+
+        leftFilter.getBounds(bounds);
+        ShaderUtils.setUniform4f(leftBoundsLocation, bounds[0], bounds[1], bounds[2], bounds[3]);
+        ShaderUtils.setUniform4f(leftColorLocation, leftColor[0], leftColor[1], leftColor[2], leftColor[3]);
+        rightFilter.getBounds(bounds);
+        ShaderUtils.setUniform4f(rightBoundsLocation, bounds[0], bounds[1], bounds[2], bounds[3]);
+        ShaderUtils.setUniform4f(multiplyColorLocation,
+            multiplyColor[0], multiplyColor[1], multiplyColor[2], multiplyColor[3]);
+        ShaderUtils.setUniform4f(invertColorLocation,
+            invertColor[0], invertColor[1], invertColor[2], invertColor[3]);
+
+        for (int unit = 0; unit < 2; unit++) {
+            int texture = AThingLeftBehindService.getTexture(unit);
+            if (texture != 0) {
+                TextureUtils.bindTexture(unit, texture);
+            }
+        }
+
+        BufferUtils.bindVAO(vao);
+        GLES32.glDrawArrays(GLES32.GL_TRIANGLES, 0, 3);
+    }
+}
\ No newline at end of file
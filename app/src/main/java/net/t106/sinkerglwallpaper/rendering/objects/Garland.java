@@ -1,11 +1,17 @@
 package net.t106.sinkerglwallpaper.rendering.objects;
 
 import java.nio.FloatBuffer;
-import android.opengl.GLES32;
 import net.t106.sinkerglwallpaper.opengl.utils.MatrixUtils;
 import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
 import net.t106.sinkerglwallpaper.opengl.utils.BufferUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.GLResourcePool;
+import net.t106.sinkerglwallpaper.opengl.utils.GLStateCache;
+import net.t106.sinkerglwallpaper.opengl.utils.GeometryRegistry;
+import net.t106.sinkerglwallpaper.opengl.utils.TrimmedQuadMesh;
+import net.t106.sinkerglwallpaper.opengl.utils.VertexFormat;
 import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+import net.t106.sinkerglwallpaper.config.BlendModeManager;
+import net.t106.sinkerglwallpaper.rendering.queue.RenderQueue;
 import net.t106.sinkerglwallpaper.rendering.services.AThingLeftBehindService;
 
 /**
@@ -15,24 +21,34 @@ import net.t106.sinkerglwallpaper.rendering.services.AThingLeftBehindService;
 public abstract class Garland {
 	protected float apex[], coords[];
 	protected FloatBuffer ab, cb;
-	protected int cnt;
 	
 	// OpenGL ES 3.2 resources
 	protected int vao;            // Vertex Array Object
-	protected int vertexVBO;      // Vertex Buffer Object for positions
-	protected int texCoordVBO;    // Vertex Buffer Object for texture coordinates
-	protected int shaderProgram;  // Shader program handle
+	protected int vertexVBO;      // Positions VBO, only for objects building their own VAO
+	protected int texCoordVBO;    // Texture coordinate VBO, only for objects building their own VAO
+	protected GeometryRegistry.Geometry geometry;  // Shared quad owning vao, if acquired
+	protected int shaderProgram;  // Shader program handle (shared, owned by resources)
+	
+	// Trimmed mesh replacing the quad, see setMesh()
+	protected TrimmedQuadMesh mesh;
+	protected int indexVBO;       // Mesh indices, only for objects drawing a mesh
+	protected int indexCount;     // 0 while the plain quad is drawn
+	
+	// Scope through which shared GL objects are acquired
+	protected GLResourcePool.Scope resources;
 	
 	// Shader uniform locations
 	protected int mvpMatrixLocation;
 	protected int textureLocation;
 	protected int colorLocation;
-	protected int blendModeLocation;
 	
 	// Matrix for transformations
 	protected float[] modelMatrix;
 	protected float[] mvpMatrix;
 	
+	// FrameProfiler phase the draw time is charged to, -1 for none
+	protected int profilerPhase = -1;
+	
 	public Garland() {
 		modelMatrix = MatrixUtils.identity();
 		mvpMatrix = new float[16];
@@ -41,9 +57,11 @@ public abstract class Garland {
 	/**
 	 * Initialize OpenGL ES 3.2 resources
 	 * Must be called after OpenGL context is created
+	 * @param resources Scope of the renderer that owns the shared objects
 	 */
-	public void initGL() {
+	public void initGL(GLResourcePool.Scope resources) {
 		android.util.Log.d("Garland", getClass().getSimpleName() + " initGL() started");
+		this.resources = resources;
 		
 		// Create shader program
 		createShaderProgram();
@@ -54,14 +72,11 @@ public abstract class Garland {
 			return;
 		}
 		
-		// Get uniform locations
-		mvpMatrixLocation = ShaderUtils.getUniformLocation(shaderProgram, "u_mvpMatrix");
-		textureLocation = ShaderUtils.getUniformLocation(shaderProgram, "u_texture");
-		colorLocation = ShaderUtils.getUniformLocation(shaderProgram, "u_color");
-		blendModeLocation = ShaderUtils.getUniformLocation(shaderProgram, "u_blendMode");
+		// Get uniform locations (looked up once per shared program)
+		loadUniformLocations();
 		
 		android.util.Log.d("Garland", getClass().getSimpleName() + " uniform locations: mvp=" + mvpMatrixLocation + 
-			", texture=" + textureLocation + ", color=" + colorLocation + ", blend=" + blendModeLocation);
+			", texture=" + textureLocation + ", color=" + colorLocation);
 		
 		// Create VAO and VBOs
 		createBuffers();
@@ -70,24 +85,104 @@ public abstract class Garland {
 		android.util.Log.d("Garland", getClass().getSimpleName() + " initGL() completed");
 	}
 	
+	/**
+	 * Looks up the common uniforms of shaderProgram
+	 */
+	protected void loadUniformLocations() {
+		mvpMatrixLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_mvpMatrix");
+		textureLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_texture");
+		colorLocation = ShaderLoader.getUniformLocation(shaderProgram, "u_color");
+	}
+	
 	/**
 	 * Create shader program - to be overridden by subclasses if needed
+	 * The blend mode is compiled into the program, see ShaderLoader.Programs
 	 */
 	protected void createShaderProgram() {
 		// Default implementation uses basic shader program
 		// Subclasses can override to use different shaders
-		shaderProgram = ShaderLoader.Programs.createBasicProgram(AThingLeftBehindService.getContext());
+		shaderProgram = ShaderLoader.Programs.acquireBasicProgram(AThingLeftBehindService.getContext(), resources,
+			BlendModeManager.BLEND_ADDITIVE);
 	}
 	
 	/**
 	 * Create VAO and VBOs for vertex data
+	 * Identical quads are shared through the thread's GeometryRegistry
 	 */
 	protected void createBuffers() {
-		if (apex != null && coords != null) {
-			vao = BufferUtils.createQuadVAO(apex, coords, 0, 1);
+		if (apex == null || coords == null) {
+			return;
+		}
+		if (mesh != null) {
+			GLStateCache state = GLStateCache.current();
+			vao = BufferUtils.createVAO();
+			state.bindVertexArray(vao);
+			createMeshBuffers();
+			state.bindVertexArray(0);
+			return;
+		}
+		geometry = GeometryRegistry.current().acquireQuad(apex, coords, 0, 1);
+		vao = geometry.vao;
+	}
+	
+	/**
+	 * Draw only the visible part of the texture with a trimmed mesh
+	 * Takes effect with the next initGL(). apex / coords must be an
+	 * axis-aligned quad in STANDARD_QUAD order with an axis-aligned (possibly
+	 * mirrored) texture mapping, as all predefined geometries are.
+	 * @param mesh Mesh of the texture drawn, or null for the plain quad
+	 */
+	public void setMesh(TrimmedQuadMesh mesh) {
+		this.mesh = mesh;
+	}
+	
+	/**
+	 * Create the mesh's vertex and index buffers in the bound VAO
+	 * Mesh vertices are texture coordinates; each goes where apex / coords
+	 * show that texel, so mirrored mappings mirror the mesh too.
+	 */
+	protected void createMeshBuffers() {
+		float[] texCoords = mesh.getTexCoords();
+		float[] positions = new float[texCoords.length];
+		// Corners 0, 1, 2: bottom left, bottom right, top left
+		for (int i = 0; i < texCoords.length; i += 2) {
+			float s = (texCoords[i] - coords[0]) / (coords[2] - coords[0]);
+			float t = (texCoords[i + 1] - coords[1]) / (coords[5] - coords[1]);
+			positions[i] = apex[0] + s * (apex[2] - apex[0]);
+			positions[i + 1] = apex[1] + t * (apex[5] - apex[1]);
+		}
+		vertexVBO = BufferUtils.createInterleavedVBO(VertexFormat.POSITION_UV,
+			new float[][] { positions, texCoords }, mesh.getVertexCount());
+		VertexFormat.POSITION_UV.bindAttributes();
+		indexVBO = BufferUtils.createIndexBuffer(mesh.getIndices());
+		indexCount = mesh.getIndexCount();
+	}
+	
+	/**
+	 * Draw the bound VAO's geometry: the mesh if there is one, else the quad
+	 */
+	protected void drawGeometry() {
+		if (indexCount > 0) {
+			BufferUtils.drawIndexed(indexCount);
+		} else {
+			BufferUtils.drawQuad();
 		}
 	}
 	
+	/**
+	 * Switch to geometry matching the current apex / coords after they changed
+	 * The new quad is acquired before the old one is released, so unchanged
+	 * geometry is neither deleted nor recreated
+	 */
+	protected void rebuildBuffers() {
+		if (geometry == null) {
+			return;  // GL resources not created yet; initGL() will pick up the new data
+		}
+		GeometryRegistry.Geometry old = geometry;
+		createBuffers();
+		GeometryRegistry.current().release(old);
+	}
+	
 	/**
 	 * Update MVP matrix with view and projection matrices
 	 */
@@ -101,19 +196,23 @@ public abstract class Garland {
 	 * Bind shader program and set common uniforms
 	 */
 	protected void bindShader() {
-		GLES32.glUseProgram(shaderProgram);
+		GLStateCache.current().useProgram(shaderProgram);
 		ShaderUtils.setUniformMatrix4fv(mvpMatrixLocation, mvpMatrix);
 		ShaderUtils.setUniform1i(textureLocation, 0); // Use texture unit 0
 	}
 	
 	/**
-	 * Clean up OpenGL resources
+	 * Clean up per-context OpenGL resources
+	 * The shader program is shared and released with the owning scope
 	 */
 	public void cleanup() {
-		if (vao != 0) {
+		if (geometry != null) {
+			GeometryRegistry.current().release(geometry);
+			geometry = null;
+		} else if (vao != 0) {
 			BufferUtils.deleteVAO(vao);
-			vao = 0;
 		}
+		vao = 0;
 		if (vertexVBO != 0) {
 			BufferUtils.deleteVBO(vertexVBO);
 			vertexVBO = 0;
@@ -122,16 +221,64 @@ public abstract class Garland {
 			BufferUtils.deleteVBO(texCoordVBO);
 			texCoordVBO = 0;
 		}
-		if (shaderProgram != 0) {
-			GLES32.glDeleteProgram(shaderProgram);
-			shaderProgram = 0;
+		if (indexVBO != 0) {
+			BufferUtils.deleteVBO(indexVBO);
+			indexVBO = 0;
 		}
+		indexCount = 0;
+		shaderProgram = 0;
+		resources = null;
 	}
 	
 	// Abstract methods - subclasses must implement these
 	public abstract void Draw(float[] viewMatrix, float[] projectionMatrix);
 	public abstract void Update(float deltaTime);
 	
+	/**
+	 * Submit the draw items of this object to the render queue
+	 * Default: one additive pass without texture; subclasses override to
+	 * describe their real state so the queue can group them
+	 */
+	public void submit(RenderQueue queue) {
+		queue.submit(this, 0, RenderQueue.LAYER_ADDITIVE, shaderProgram, 0,
+			BlendModeManager.BLEND_ADDITIVE, profilerPhase);
+	}
+	
+	/**
+	 * Draw one submitted pass; objects with a single pass just Draw()
+	 */
+	public void drawPass(int pass, float[] viewMatrix, float[] projectionMatrix) {
+		Draw(viewMatrix, projectionMatrix);
+	}
+	
+	/**
+	 * Gets the axis-aligned extent of the object's quad in world space
+	 * @param dst Receives min x, min y, max x, max y
+	 */
+	public void getBounds(float[] dst) {
+		float[] corner = new float[4];
+		float[] vertex = new float[4];
+		dst[0] = dst[1] = Float.POSITIVE_INFINITY;
+		dst[2] = dst[3] = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i + 1 < apex.length; i += 2) {
+			vertex[0] = apex[i];
+			vertex[1] = apex[i + 1];
+			vertex[3] = 1.0f;
+			android.opengl.Matrix.multiplyMV(corner, 0, modelMatrix, 0, vertex, 0);
+			dst[0] = Math.min(dst[0], corner[0]);
+			dst[1] = Math.min(dst[1], corner[1]);
+			dst[2] = Math.max(dst[2], corner[0]);
+			dst[3] = Math.max(dst[3], corner[1]);
+		}
+	}
+	
+	/**
+	 * Sets the FrameProfiler phase this object's draw time is charged to
+	 */
+	public void setProfilerPhase(int phase) {
+		profilerPhase = phase;
+	}
+	
 	// Optional method for size changes
 	public void sizechange(boolean smallflg) {
 		// Default implementation does nothing
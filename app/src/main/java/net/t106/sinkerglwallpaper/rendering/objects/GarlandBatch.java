@@ -0,0 +1,245 @@
+package net.t106.sinkerglwallpaper.rendering.objects;
+
+import android.opengl.GLES32;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import net.t106.sinkerglwallpaper.config.BlendModeManager;
+import net.t106.sinkerglwallpaper.config.RenderConfig;
+import net.t106.sinkerglwallpaper.opengl.utils.BufferUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.GLStateCache;
+import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.TextureUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.VertexFormat;
+import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+import net.t106.sinkerglwallpaper.rendering.queue.RenderQueue;
+import net.t106.sinkerglwallpaper.rendering.services.AThingLeftBehindService;
+
+/**
+ * Draws any number of RotatingGarlands with one instanced draw call
+ * Every garland becomes an instance of a shared unit quad; its transform,
+ * tint and texture index go into a per-instance vertex buffer rebuilt each
+ * frame. The garlands' own GL resources are never created.
+ *
+ * All garlands of a batch share its blend mode. Geometry must be a scaled
+ * STANDARD_QUAD (as all predefined garland geometries are), and the texture
+ * index must be 0 or 1 (the textures bound to units 0 and 1). Mirrored
+ * texture variants are applied per instance as UV transforms.
+ *
+ * With a trimmed mesh (setMesh()) every instance draws the mesh instead of
+ * the quad; mirrored instances mirror their model matrix instead of the
+ * texture coordinates, so the mesh follows the mirrored texture.
+ */
+public class GarlandBatch extends Garland {
+
+    // Floats per instance: model matrix, tint, UV transform, texture index
+    private static final int INSTANCE_FLOATS = 16 + 4 + 4 + 1;
+    private static final int INSTANCE_STRIDE = INSTANCE_FLOATS * 4;
+
+    // Attribute locations, see instanced_vertex.glsl
+    private static final int MODEL_MATRIX_LOCATION = 2;
+    private static final int COLOR_LOCATION = 6;
+    private static final int TEXTURE_INDEX_LOCATION = 7;
+    private static final int UV_TRANSFORM_LOCATION = 8;
+
+    private final ArrayList<RotatingGarland> garlands = new ArrayList<>();
+    private final int blendMode;
+
+    private int instanceVBO;
+    private int instanceCapacity;
+    private float[] instanceData = new float[0];
+    private FloatBuffer instanceBuffer;
+    private int texture1Location;
+
+    public GarlandBatch(int blendMode) {
+        super();
+        this.blendMode = blendMode;
+
+        // Unit quad; each instance scales it to its own geometry
+        apex = RenderConfig.GeometryConfig.STANDARD_QUAD.vertices;
+        coords = RenderConfig.GeometryConfig.STANDARD_QUAD.texCoords;
+    }
+
+    /**
+     * Adds a garland to the batch
+     * @param garland Garland drawn as one instance; must use the batch's blend mode
+     */
+    public void add(RotatingGarland garland) {
+        if (garland.getConfig().blendMode != blendMode) {
+            throw new IllegalArgumentException("Garland blend mode "
+                + BlendModeManager.getBlendModeName(garland.getConfig().blendMode)
+                + " does not match batch blend mode " + BlendModeManager.getBlendModeName(blendMode));
+        }
+        garlands.add(garland);
+    }
+
+    /**
+     * Gets the number of garlands in the batch
+     */
+    public int size() {
+        return garlands.size();
+    }
+
+    /**
+     * Gets a garland of the batch
+     * @param index Index in the order garlands were added
+     */
+    public RotatingGarland get(int index) {
+        return garlands.get(index);
+    }
+
+    /**
+     * Gets the blend mode shared by all garlands of the batch
+     */
+    public int getBlendMode() {
+        return blendMode;
+    }
+
+    @Override
+    protected void createShaderProgram() {
+        shaderProgram = ShaderLoader.Programs.acquireInstancedBlendProgram(AThingLeftBehindService.getContext(), resources,
+            blendMode);
+        if (shaderProgram != 0) {
+            texture1Location = ShaderLoader.getUniformLocation(shaderProgram, "u_texture1");
+        }
+    }
+
+    @Override
+    protected void createBuffers() {
+        GLStateCache state = GLStateCache.current();
+        vao = BufferUtils.createVAO();
+        state.bindVertexArray(vao);
+
+        if (mesh != null) {
+            createMeshBuffers();
+        } else {
+            // Unit quad, interleaved half-float positions and normalized UVs
+            vertexVBO = BufferUtils.createInterleavedVBO(VertexFormat.POSITION_UV, new float[][] { apex, coords }, 4);
+            VertexFormat.POSITION_UV.bindAttributes();
+        }
+
+        // Per-instance attributes; storage is allocated on first draw
+        int[] buffers = new int[1];
+        GLES32.glGenBuffers(1, buffers, 0);
+        instanceVBO = buffers[0];
+        instanceCapacity = 0;
+        state.bindArrayBuffer(instanceVBO);
+        for (int column = 0; column < 4; column++) {
+            setInstanceAttribute(MODEL_MATRIX_LOCATION + column, 4, column * 16);
+        }
+        setInstanceAttribute(COLOR_LOCATION, 4, 16 * 4);
+        setInstanceAttribute(UV_TRANSFORM_LOCATION, 4, 20 * 4);
+        setInstanceAttribute(TEXTURE_INDEX_LOCATION, 1, 24 * 4);
+
+        state.bindVertexArray(0);
+    }
+
+    private static void setInstanceAttribute(int location, int size, int offset) {
+        BufferUtils.setVertexAttribute(location, size, INSTANCE_STRIDE, offset);
+        GLES32.glVertexAttribDivisor(location, 1);
+    }
+
+    @Override
+    public void Update(float deltaTime) {
+        for (int i = 0; i < garlands.size(); i++) {
+            garlands.get(i).Update(deltaTime);
+        }
+    }
+
+    @Override
+    public void submit(RenderQueue queue) {
+        if (!garlands.isEmpty()) {
+            queue.submit(this, 0, RenderQueue.LAYER_ADDITIVE, shaderProgram, 0, blendMode, profilerPhase);
+        }
+    }
+
+    @Override
+    public void Draw(float[] viewMatrix, float[] projectionMatrix) {
+        int count = garlands.size();
+        if (count == 0 || shaderProgram == 0 || vao == 0) {
+            return;
+        }
+
+        // Model matrices come per instance, so the uniform holds projection * view
+        updateMVP(viewMatrix, projectionMatrix);
+        bindShader();
+        ShaderUtils.setUniform1i(texture1Location, 1);
+        ShaderUtils.setUniform4f(colorLocation, 1.0f, 1.0f, 1.0f, 1.0f);
+
+        for (int unit = 0; unit < 2; unit++) {
+            int texture = AThingLeftBehindService.getTexture(unit);
+            if (texture != 0) {
+                TextureUtils.bindTexture(unit, texture);
+            }
+        }
+        BlendModeManager.applyBlendMode(blendMode);
+
+        uploadInstances(count);
+
+        BufferUtils.bindVAO(vao);
+        if (indexCount > 0) {
+            GLES32.glDrawElementsInstanced(GLES32.GL_TRIANGLES, indexCount, GLES32.GL_UNSIGNED_SHORT, 0, count);
+        } else {
+            GLES32.glDrawArraysInstanced(GLES32.GL_TRIANGLE_STRIP, 0, 4, count);
+        }
+    }
+
+    private void uploadInstances(int count) {
+        int floats = count * INSTANCE_FLOATS;
+        if (instanceData.length < floats) {
+            instanceData = new float[floats];
+            instanceBuffer = ByteBuffer.allocateDirect(floats * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            int start = offset;
+            offset = garlands.get(i).writeInstance(instanceData, offset);
+            if (indexCount > 0) {
+                mirrorModel(instanceData, start);
+            }
+        }
+        instanceBuffer.clear();
+        instanceBuffer.put(instanceData, 0, floats);
+        instanceBuffer.position(0);
+
+        GLStateCache.current().bindArrayBuffer(instanceVBO);
+        if (count > instanceCapacity) {
+            GLES32.glBufferData(GLES32.GL_ARRAY_BUFFER, floats * 4, instanceBuffer, GLES32.GL_STREAM_DRAW);
+            instanceCapacity = count;
+        } else {
+            GLES32.glBufferSubData(GLES32.GL_ARRAY_BUFFER, 0, floats * 4, instanceBuffer);
+        }
+    }
+
+    /**
+     * Moves an instance's UV mirroring into its model matrix
+     * Negating a matrix column mirrors the geometry, and with it the mesh;
+     * the texture then maps unmirrored.
+     */
+    private static void mirrorModel(float[] data, int offset) {
+        for (int axis = 0; axis < 2; axis++) {
+            int scale = offset + 20 + axis;
+            if (data[scale] < 0.0f) {
+                for (int row = 0; row < 4; row++) {
+                    data[offset + axis * 4 + row] = -data[offset + axis * 4 + row];
+                }
+                // u * s + o == (1 - u) * -s + (o + s)
+                data[scale + 2] += data[scale];
+                data[scale] = -data[scale];
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        if (instanceVBO != 0) {
+            BufferUtils.deleteVBO(instanceVBO);
+            instanceVBO = 0;
+            instanceCapacity = 0;
+        }
+        super.cleanup();
+    }
+}
@@ -1,6 +1,5 @@
 package net.t106.sinkerglwallpaper.rendering.objects;
 
-import android.opengl.GLES32;
 import net.t106.sinkerglwallpaper.config.RenderConfig;
 import net.t106.sinkerglwallpaper.config.BlendModeManager;
 import net.t106.sinkerglwallpaper.opengl.utils.MatrixUtils;
@@ -8,11 +7,13 @@ import net.t106.sinkerglwallpaper.opengl.utils.ShaderUtils;
 import net.t106.sinkerglwallpaper.opengl.utils.BufferUtils;
 import net.t106.sinkerglwallpaper.opengl.utils.TextureUtils;
 import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+import net.t106.sinkerglwallpaper.rendering.queue.RenderQueue;
 import net.t106.sinkerglwallpaper.rendering.services.AThingLeftBehindService;
+import net.t106.sinkerglwallpaper.rendering.timing.AnimationClock;
 
 /**
  * Unified rotating garland object for OpenGL ES 3.2
- * Replaces both CenterGarland and BackgroundGarland with configuration-driven behavior
+ * Center and background garlands are configurations of it (RenderConfig.CompleteConfig)
  */
 public class RotatingGarland extends Garland {
     
@@ -23,9 +24,9 @@ public class RotatingGarland extends Garland {
         super();
         this.config = config;
         
-        // Set up geometry from configuration
+        // Set up geometry from configuration; texture variants are UV transforms
         apex = config.geometry.vertices;
-        coords = config.geometry.texCoords;
+        coords = config.texture.transformTexCoords(config.geometry.texCoords);
         
         // Keep legacy buffer creation for compatibility
         ab = AThingLeftBehindService.makeFloatBuffer(apex);
@@ -46,7 +47,8 @@ public class RotatingGarland extends Garland {
     @Override
     protected void createShaderProgram() {
         // Use blend shader program for texture rendering with color tinting
-        shaderProgram = ShaderLoader.Programs.createBlendProgram(AThingLeftBehindService.getContext());
+        shaderProgram = ShaderLoader.Programs.acquireBlendProgram(AThingLeftBehindService.getContext(), resources,
+            config.blendMode);
     }
     
     @Override
@@ -59,13 +61,10 @@ public class RotatingGarland extends Garland {
         
         // Set texture if enabled
         if (config.texture.useTexture) {
-            TextureUtils.bindTexture(0, AThingLeftBehindService.textures[config.texture.textureIndex]);
+            TextureUtils.bindTexture(0, AThingLeftBehindService.getTexture(config.texture.textureIndex));
         }
         ShaderUtils.setUniform1i(textureLocation, 0);
         
-        // Set blend mode
-        ShaderUtils.setUniform1i(blendModeLocation, config.blendMode);
-        
         // Set color from configuration
         ShaderUtils.setUniform4f(colorLocation, 
             config.color.red, config.color.green, 
@@ -74,35 +73,56 @@ public class RotatingGarland extends Garland {
         // Apply blending
         BlendModeManager.applyBlendMode(config.blendMode);
         
-        // Render the object
+        // Render the object; state stays bound, the state cache skips redundant rebinds
         BufferUtils.bindVAO(vao);
-        BufferUtils.drawQuad();
-        BufferUtils.unbindVAO();
-        
-        // Clean up
-        BlendModeManager.disableBlending();
-        
-        if (config.texture.useTexture) {
-            TextureUtils.unbindTexture(0);
-        }
+        drawGeometry();
+    }
+    
+    @Override
+    public void submit(RenderQueue queue) {
+        int texture = config.texture.useTexture
+            ? AThingLeftBehindService.getTexture(config.texture.textureIndex) : 0;
+        queue.submit(this, 0, RenderQueue.LAYER_ADDITIVE, shaderProgram, texture,
+            config.blendMode, profilerPhase);
     }
     
     @Override
     public void Update(float deltaTime) {
-        // Update rotation counter
-        cnt++;
-        if (cnt >= config.rotation.maxCount) {
-            cnt = 0;
-        }
-        
-        // Calculate rotation angle based on configuration
+        // Calculate rotation angle from elapsed time based on configuration
         float speed = config.rotation.clockwise ? config.rotation.rotationSpeed : -config.rotation.rotationSpeed;
-        rotation = speed * cnt;
+        rotation = AnimationClock.rotationAngle(speed, config.rotation.maxCount);
         
         // Update model matrix with rotation
         modelMatrix = MatrixUtils.rotateZ(rotation);
     }
     
+    /**
+     * Writes this garland's per-instance data for GarlandBatch
+     * Layout: model matrix (16), tint (4), UV scale and offset (4), texture
+     * index (1). The model matrix scales the batch's unit quad up to this
+     * garland's geometry.
+     * @param dst Instance data array
+     * @param offset Index of the first float to write
+     * @return Index just past the written data
+     */
+    public int writeInstance(float[] dst, int offset) {
+        float scale = config.geometry.scale;
+        System.arraycopy(modelMatrix, 0, dst, offset, 16);
+        android.opengl.Matrix.scaleM(dst, offset, scale, scale, 1.0f);
+        offset += 16;
+        
+        dst[offset++] = config.color.red;
+        dst[offset++] = config.color.green;
+        dst[offset++] = config.color.blue;
+        dst[offset++] = config.color.alpha;
+        dst[offset++] = config.texture.uvScaleU;
+        dst[offset++] = config.texture.uvScaleV;
+        dst[offset++] = config.texture.uvOffsetU;
+        dst[offset++] = config.texture.uvOffsetV;
+        dst[offset++] = config.texture.useTexture ? config.texture.textureIndex : -1;
+        return offset;
+    }
+    
     /**
      * Gets the current rotation angle in degrees
      */
@@ -0,0 +1,135 @@
+package net.t106.sinkerglwallpaper.rendering.queue;
+
+import java.util.Arrays;
+import net.t106.sinkerglwallpaper.rendering.objects.Garland;
+import net.t106.sinkerglwallpaper.rendering.timing.FrameProfiler;
+
+/**
+ * Per-frame queue of draw items ordered by a packed 64-bit sort key
+ * Objects submit one item per pass; execute() sorts the keys and draws the
+ * items so that, within a layer, items sharing program, texture and blend
+ * mode are adjacent and GLStateCache can skip their state changes.
+ *
+ * Key layout (most significant first):
+ *   layer 8 bits | program 12 bits | texture 12 bits | blend mode 8 bits |
+ *   unused 8 bits | item index 16 bits
+ *
+ * Layers are drawn in ascending order. Only put items whose blending
+ * commutes (e.g. additive) into the same layer; order inside a layer follows
+ * the state fields, not submission order.
+ */
+public class RenderQueue {
+
+    // Predefined layers, drawn back to front
+    public static final int LAYER_ADDITIVE = 0;
+    public static final int LAYER_MULTIPLY = 1;
+    public static final int LAYER_INVERT = 2;
+
+    private static final int MAX_ITEMS = 1 << 16;
+
+    private long[] keys;
+    private Garland[] objects;
+    private int[] passes;
+    private int[] profilerPhases;
+    private int count;
+
+    // Draw time per profiler phase of the frame being executed
+    private final long[] phaseNanos = new long[FrameProfiler.PHASE_COUNT];
+    private final FrameProfiler profiler;
+
+    /**
+     * @param capacity Number of items preallocated; the queue grows if exceeded
+     * @param profiler Profiler of the owning renderer that draw times are recorded into
+     */
+    public RenderQueue(int capacity, FrameProfiler profiler) {
+        this.profiler = profiler;
+        keys = new long[capacity];
+        objects = new Garland[capacity];
+        passes = new int[capacity];
+        profilerPhases = new int[capacity];
+    }
+
+    /**
+     * Packs the state of a draw item into the high bits of a sort key
+     */
+    public static long makeKey(int layer, int program, int texture, int blendMode) {
+        return ((long) (layer & 0xFF) << 56)
+                | ((long) (program & 0xFFF) << 44)
+                | ((long) (texture & 0xFFF) << 32)
+                | ((long) (blendMode & 0xFF) << 24);
+    }
+
+    /**
+     * Drops the items of the previous frame
+     */
+    public void clear() {
+        Arrays.fill(objects, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Adds a draw item; object.drawPass(pass, ...) is called for it by execute()
+     * @param object Object that draws the item
+     * @param pass Pass index handed back to the object
+     * @param layer Layer, see LAYER_ constants
+     * @param program Shader program the item uses
+     * @param texture Texture bound on unit 0, or 0
+     * @param blendMode BlendModeManager mode the item applies
+     * @param profilerPhase FrameProfiler phase the draw time is charged to, or -1
+     */
+    public void submit(Garland object, int pass, int layer, int program, int texture,
+                       int blendMode, int profilerPhase) {
+        if (count == keys.length) {
+            grow();
+        }
+        keys[count] = makeKey(layer, program, texture, blendMode) | count;
+        objects[count] = object;
+        passes[count] = pass;
+        profilerPhases[count] = profilerPhase;
+        count++;
+    }
+
+    /**
+     * Sorts the submitted items and draws them
+     */
+    public void execute(float[] viewMatrix, float[] projectionMatrix) {
+        Arrays.sort(keys, 0, count);
+        Arrays.fill(phaseNanos, 0);
+
+        for (int i = 0; i < count; i++) {
+            int index = (int) (keys[i] & 0xFFFF);
+            long start = System.nanoTime();
+            objects[index].drawPass(passes[index], viewMatrix, projectionMatrix);
+            int phase = profilerPhases[index];
+            if (phase >= 0) {
+                phaseNanos[phase] += System.nanoTime() - start;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            int phase = profilerPhases[i];
+            if (phase >= 0 && phaseNanos[phase] >= 0) {
+                profiler.record(phase, phaseNanos[phase]);
+                phaseNanos[phase] = -1;  // record each phase once
+            }
+        }
+    }
+
+    /**
+     * Gets the number of items submitted this frame
+     */
+    public int size() {
+        return count;
+    }
+
+    private void grow() {
+        if (keys.length >= MAX_ITEMS) {
+            throw new IllegalStateException("RenderQueue holds at most " + MAX_ITEMS + " items");
+        }
+        int capacity = Math.min(Math.max(keys.length * 2, 8), MAX_ITEMS);
+        keys = Arrays.copyOf(keys, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+        passes = Arrays.copyOf(passes, capacity);
+        profilerPhases = Arrays.copyOf(profilerPhases, capacity);
+    }
+}
@@ -11,131 +11,323 @@ import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import android.opengl.GLES32;
 import android.opengl.GLUtils;
+import android.util.DisplayMetrics;
+import android.view.WindowManager;
 import androidx.preference.PreferenceManager;
 import android.view.SurfaceHolder;
 import net.rbgrn.android.glwallpaperservice.GLWallpaperServiceES32;
 import net.t106.sinkerglwallpaper.R;
-import net.t106.sinkerglwallpaper.rendering.objects.CenterGarland;
-import net.t106.sinkerglwallpaper.rendering.objects.BackgroundGarland;
+import net.t106.sinkerglwallpaper.config.BlendModeManager;
+import net.t106.sinkerglwallpaper.config.RenderConfig;
+import net.t106.sinkerglwallpaper.rendering.objects.FusedCompositor;
+import net.t106.sinkerglwallpaper.rendering.objects.GarlandBatch;
+import net.t106.sinkerglwallpaper.rendering.objects.RotatingGarland;
 import net.t106.sinkerglwallpaper.rendering.filters.LeftFilter;
 import net.t106.sinkerglwallpaper.rendering.filters.RightFilter;
+import net.t106.sinkerglwallpaper.rendering.queue.RenderQueue;
+import net.t106.sinkerglwallpaper.opengl.utils.AssetPreloader;
+import net.t106.sinkerglwallpaper.opengl.utils.GLResourcePool;
+import net.t106.sinkerglwallpaper.opengl.utils.GLStateCache;
+import net.t106.sinkerglwallpaper.opengl.utils.GeometryRegistry;
 import net.t106.sinkerglwallpaper.opengl.utils.MatrixUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.RenderTarget;
 import net.t106.sinkerglwallpaper.opengl.utils.TextureUtils;
+import net.t106.sinkerglwallpaper.opengl.utils.TrimmedQuadMesh;
+import net.t106.sinkerglwallpaper.opengl.shaders.ShaderLoader;
+import net.t106.sinkerglwallpaper.rendering.timing.AnimationClock;
+import net.t106.sinkerglwallpaper.rendering.timing.FrameProfiler;
+import net.t106.sinkerglwallpaper.rendering.timing.ResolutionScaler;
 
 public class AThingLeftBehindService extends GLWallpaperServiceES32{
-	public static int[] textures = new int[2];
+	public static final String PREF_FRAME_RATE_CAP = "frame_rate_cap";
+	private static final String DEFAULT_FRAME_RATE_CAP = "30";
+	// Lowest render resolution in percent of the surface; 100 renders at full size
+	public static final String PREF_RESOLUTION_FLOOR = "resolution_floor";
+	private static final String DEFAULT_RESOLUTION_FLOOR = "100";
+	// Draw the scene in one full-screen pass instead of one blended pass per object
+	public static final String PREF_FUSED_COMPOSITOR = "fused_compositor";
+	
+	private static final String GARLAND_TEXTURES_KEY = "textures:gr";
+	// Compressed assets textures/gr.*.ktx, falling back to R.drawable.gr
+	private static final String GARLAND_TEXTURE_NAME = "gr";
+	// gr.png has no alpha channel; its keyed texels become black, which adds nothing to additive garlands
+	private static final boolean GARLAND_TEXTURE_OPAQUE = true;
+	
+	// Camera; garland texture sizing depends on both
+	private static final float FIELD_OF_VIEW_Y = 45f;
+	private static final float CAMERA_Z = 4.0f;
+	
+	// Every engine's context joins one share group backed by the resource pool
+	private static final GLWallpaperServiceES32.SharedContextFactory contextFactory =
+			new GLWallpaperServiceES32.SharedContextFactory(() -> {
+				GLResourcePool.getInstance().invalidate();
+				ShaderLoader.clearUniformLocations();
+				TextureUtils.clearResidentTextures();
+			});
+	
+	// Garland textures, published from the resource pool
+	// Mirrored variants are UV transforms (RenderConfig.TextureConfig), not extra textures
+	private static volatile int[] textures = new int[1];
 	private static Context context = null;
 	
+	// Trimmed garland mesh, built from R.drawable.gr once per process; null draws full quads
+	private static volatile TrimmedQuadMesh garlandMesh;
+	private static volatile boolean garlandMeshLoaded;
+	
 	// Static method to provide context to other classes
 	public static Context getContext() {
 		return context;
 	}
 	
-	public class AThingLeftBehindEngine extends GLWallpaperServiceES32.GLEngine{
+	// Shared garland texture handle; identical for every engine of the share group
+	public static int getTexture(int index) {
+		int[] current = textures;
+		return index < current.length ? current[index] : 0;
+	}
+	
+	/**
+	 * Gets the largest on-screen size of a garland texture in pixels
+	 * The texture is shared by all engines, so it is sized for the largest
+	 * display dimension (the view may be rotated) and the largest garland quad.
+	 */
+	private static int getGarlandTargetSize(Context context) {
+		DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+		int screenSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+		// Pixels per world unit at the z = 0 plane
+		double pixelsPerUnit = screenSize / (2.0 * CAMERA_Z * Math.tan(Math.toRadians(FIELD_OF_VIEW_Y / 2)));
+		float scale = Math.max(RenderConfig.CompleteConfig.CENTER_GARLAND.geometry.scale,
+				RenderConfig.CompleteConfig.BACKGROUND_GARLAND.geometry.scale);
+		// Quads span -scale..scale
+		return (int) Math.ceil(2 * scale * pixelsPerUnit);
+	}
+	
+	/**
+	 * Gets the trimmed garland mesh, loading it on first use
+	 * Normally preloaded since onCreateEngine(); a miss reads the disk cache.
+	 */
+	private static TrimmedQuadMesh getGarlandMesh(Context context) {
+		if (!garlandMeshLoaded) {
+			TrimmedQuadMesh mesh = AssetPreloader.getInstance().takeMesh(R.drawable.gr);
+			garlandMesh = mesh != null ? mesh : TrimmedQuadMesh.load(context, R.drawable.gr);
+			garlandMeshLoaded = true;
+			if (garlandMesh != null) {
+				android.util.Log.d("AThingLeftBehindService", "Garland mesh covers "
+						+ Math.round(garlandMesh.getCoverage() * 100) + "% of the quad");
+			}
+		}
+		return garlandMesh;
+	}
+	
+	public class AThingLeftBehindEngine extends GLWallpaperServiceES32.GLEngine
+			implements SharedPreferences.OnSharedPreferenceChangeListener {
+		private SharedPreferences prefs;
+		private MyRenderer renderer;
 		
 		@Override
 	    public void onCreate(SurfaceHolder surfaceHolder) {
 	        super.onCreate(surfaceHolder);
 	        setEGLConfigChooser(8, 8, 8, 8, 16, 0);
-	        setRenderer(new MyRenderer());
+	        // Keep textures, shaders and VAOs alive while the home screen is covered
+	        setPreserveEGLContextOnPause(true);
+	        // Share textures and buffers with the other engines (preview / home screen)
+	        setEGLContextFactory(contextFactory);
+	        renderer = new MyRenderer();
+	        setRenderer(renderer);
+	        if (!isPreview()) {
+	            // The settings screen reports the wallpaper actually on the home screen
+	            FrameProfiler.setHomeScreen(renderer.profiler);
+	        }
+	        // Pace frames with the display's vsync instead of a fixed sleep
+	        setRenderMode(RENDERMODE_VSYNC);
+	        
+	        prefs = PreferenceManager.getDefaultSharedPreferences(AThingLeftBehindService.this);
+	        prefs.registerOnSharedPreferenceChangeListener(this);
+	        applyFrameRateCap();
+	        applyResolutionFloor();
+	        applyCompositor();
 		}       
 		
+		@Override
+		public void onDestroy() {
+			if (prefs != null) {
+				prefs.unregisterOnSharedPreferenceChangeListener(this);
+			}
+			if (renderer != null) {
+				FrameProfiler.clearHomeScreen(renderer.profiler);
+			}
+			super.onDestroy();
+		}
+		
+		@Override
+		public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+			if (PREF_FRAME_RATE_CAP.equals(key)) {
+				applyFrameRateCap();
+			} else if (PREF_RESOLUTION_FLOOR.equals(key)) {
+				applyResolutionFloor();
+			} else if (PREF_FUSED_COMPOSITOR.equals(key)) {
+				applyCompositor();
+			}
+		}
+		
+		private void applyFrameRateCap() {
+			float fps;
+			try {
+				fps = Float.parseFloat(prefs.getString(PREF_FRAME_RATE_CAP, DEFAULT_FRAME_RATE_CAP));
+			} catch (NumberFormatException e) {
+				fps = 0f;
+			}
+			// 0 means "native": render at every vsync
+			setMaxFrameRate(Math.max(fps, 0f));
+			renderer.scaler.setFrameRate(fps > 0f ? fps : getDisplayRefreshRate());
+		}
+		
+		private void applyResolutionFloor() {
+			float percent;
+			try {
+				percent = Float.parseFloat(prefs.getString(PREF_RESOLUTION_FLOOR, DEFAULT_RESOLUTION_FLOOR));
+			} catch (NumberFormatException e) {
+				percent = 100f;
+			}
+			renderer.scaler.setFloor(percent / 100f);
+		}
+		
+		private void applyCompositor() {
+			renderer.fusedCompositing = prefs.getBoolean(PREF_FUSED_COMPOSITOR, false);
+		}
+		
+		@SuppressWarnings("deprecation")
+		private float getDisplayRefreshRate() {
+			WindowManager windowManager = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
+			return windowManager != null ? windowManager.getDefaultDisplay().getRefreshRate() : 60f;
+		}
+		
 	}
 	
-	public class MyRenderer implements GLWallpaperServiceES32.Renderer {
-		private CenterGarland cgy;
-		private BackgroundGarland bgy;
+	public class MyRenderer implements GLWallpaperServiceES32.ContextAwareRenderer,
+			GLWallpaperServiceES32.FrameTimingRenderer {
+		// Background and center garlands, drawn with one instanced call
+		private GarlandBatch garlands;
 		private RightFilter rf;
 		private LeftFilter lf;
 		
+		// Single-pass alternative to drawing garlands, lf and rf one by one
+		private FusedCompositor fused;
+		volatile boolean fusedCompositing;
+		
+		// Dynamic resolution: frames are drawn into target at scaler's scale and
+		// upscaled to the window; unused while the user's floor is 100%
+		final ResolutionScaler scaler = new ResolutionScaler();
+		private final RenderTarget target = new RenderTarget();
+		private int surfaceWidth;
+		private int surfaceHeight;
+		
 		// OpenGL ES 3.2 matrices
 		private float[] projectionMatrix;
 		private float[] viewMatrix;
 		private long lastTime;
 		
+		// True once GL resources exist in the current EGL context
+		private boolean resourcesReady = false;
+		
+		// References this renderer holds on shared GL objects
+		private GLResourcePool.Scope resources;
+		
+		// Frame timings of this renderer only, see FrameProfiler.setHomeScreen()
+		final FrameProfiler profiler = new FrameProfiler();
+		
+		// Draw items of the current frame (four per frame: the right filter has two passes)
+		private final RenderQueue queue = new RenderQueue(8, profiler);
+		
 		public MyRenderer()
 		{   
-			cgy = new CenterGarland();
-			bgy = new BackgroundGarland();
+			garlands = new GarlandBatch(BlendModeManager.BLEND_ADDITIVE);
+			garlands.add(RotatingGarland.createBackground());
+			garlands.add(RotatingGarland.createCenter());
 			rf = new RightFilter();
 			lf = new LeftFilter();
+			fused = new FusedCompositor(garlands, lf, rf);
+			
+			garlands.setProfilerPhase(FrameProfiler.PHASE_DRAW_GARLANDS);
+			lf.setProfilerPhase(FrameProfiler.PHASE_DRAW_LEFT_FILTER);
+			rf.setProfilerPhase(FrameProfiler.PHASE_DRAW_RIGHT_FILTER);
+			fused.setProfilerPhase(FrameProfiler.PHASE_DRAW_FUSED);
 			
 			projectionMatrix = new float[16];
 			viewMatrix = new float[16];
-			lastTime = System.currentTimeMillis();
+			lastTime = System.nanoTime();
 		}
 		
 		@Override
 		public void onDrawFrame(javax.microedition.khronos.opengles.GL10 gl) {			
-			// Reset OpenGL state to known values
-			resetOpenGLState();
+			// Bindings persist between frames; the state cache only issues real changes
+			GLStateCache state = GLStateCache.current();
+			state.beginFrame();
+			
+			// Pick the draw target; the window is used directly at full scale
+			float scale = scaler.getScale();
+			boolean offscreen = scale < 1f && target.resize(Math.max(1, Math.round(surfaceWidth * scale)),
+					Math.max(1, Math.round(surfaceHeight * scale)));
+			if (offscreen) {
+				target.bind();
+			} else {
+				target.release(true);
+				scale = 1f;
+			}
 			
 			// Clear screen
 			GLES32.glClear(GLES32.GL_COLOR_BUFFER_BIT);
 			
-			// Calculate delta time for animations
-			long currentTime = System.currentTimeMillis();
-			float deltaTime = (currentTime - lastTime) / 1000.0f;
+			// Sample the monotonic animation clock; objects derive their phase from it
+			long currentTime = AnimationClock.tick();
+			float deltaTime = (currentTime - lastTime) / 1e9f;
 			lastTime = currentTime;
 			
+			
 			// Update objects
-			bgy.Update(deltaTime);
-			cgy.Update(deltaTime);
+			long phaseStart = System.nanoTime();
+			garlands.Update(deltaTime);
 			lf.Update(deltaTime);
 			rf.Update(deltaTime);
+			profiler.record(FrameProfiler.PHASE_UPDATE, System.nanoTime() - phaseStart);
 			
-			// Draw objects - filters first, then garlands
-			bgy.Draw(viewMatrix, projectionMatrix);
-			cgy.Draw(viewMatrix, projectionMatrix);
-			lf.Draw(viewMatrix, projectionMatrix);
-			rf.Draw(viewMatrix, projectionMatrix);
-		}
-		
-		private void resetOpenGLState() {
-			// Reset only binding states, not capabilities that objects need to control
-			GLES32.glUseProgram(0);
-			GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, 0);
-			GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, 0);
-			GLES32.glBindBuffer(GLES32.GL_ELEMENT_ARRAY_BUFFER, 0);
-			
-			// Don't reset blend, depth test, or cull face as objects may need them
-			// Reset vertex attribute arrays
-			for (int i = 0; i < 8; i++) {
-				GLES32.glDisableVertexAttribArray(i);
+			// Collect draw items; the queue orders them by layer and GL state
+			queue.clear();
+			if (fusedCompositing && fused.isReady()) {
+				fused.submit(queue);
+			} else {
+				garlands.submit(queue);
+				lf.submit(queue);
+				rf.submit(queue);
 			}
-		}
-		
-		private void drawWithStateIsolation(Runnable drawCommand) {
-			// Save current OpenGL binding state (not capabilities)
-			int[] currentProgram = new int[1];
-			int[] currentTexture = new int[1];
-			int[] currentArrayBuffer = new int[1];
 			
-			GLES32.glGetIntegerv(GLES32.GL_CURRENT_PROGRAM, currentProgram, 0);
-			GLES32.glGetIntegerv(GLES32.GL_TEXTURE_BINDING_2D, currentTexture, 0);
-			GLES32.glGetIntegerv(GLES32.GL_ARRAY_BUFFER_BINDING, currentArrayBuffer, 0);
+			// Per-object draw times are recorded by the queue
+			queue.execute(viewMatrix, projectionMatrix);
 			
-			try {
-				// Execute draw command
-				drawCommand.run();
-			} finally {
-				// Restore only binding states, let objects control their own capabilities
-				GLES32.glUseProgram(currentProgram[0]);
-				GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, currentTexture[0]);
-				GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, currentArrayBuffer[0]);
-				
-				// Reset vertex attribute arrays
-				for (int i = 0; i < 8; i++) {
-					GLES32.glDisableVertexAttribArray(i);
-				}
+			if (offscreen) {
+				target.blitToWindow(surfaceWidth, surfaceHeight);
 			}
+			profiler.recordRenderScale(scale);
+			
+			profiler.recordStateCalls(state.getIssuedCount(), state.getSkippedCount());
+		}
+		
+		@Override
+		public void onFrameTiming(long drawNanos, long swapNanos) {
+			profiler.record(FrameProfiler.PHASE_SWAP, swapNanos);
+			profiler.record(FrameProfiler.PHASE_FRAME, drawNanos + swapNanos);
+			scaler.onFrame(drawNanos + swapNanos);
 		}
+		
 		@Override
 		public void onSurfaceChanged(javax.microedition.khronos.opengles.GL10 gl, int wid, int hei) {
 			GLES32.glViewport(0, 0, wid, hei);
+			surfaceWidth = wid;
+			surfaceHeight = hei;
+			// Measure the new size from full resolution
+			scaler.reset();
 			
 			// Create projection matrix using modern approach
-			projectionMatrix = MatrixUtils.perspective(45f, (float)wid/(float)hei, 0.1f, 100f);
+			projectionMatrix = MatrixUtils.perspective(FIELD_OF_VIEW_Y, (float)wid/(float)hei, 0.1f, 100f);
 			
 			if(context != null)
 			{
@@ -144,24 +336,46 @@ public class AThingLeftBehindService extends GLWallpaperServiceES32{
 				lf.sizechange(true);
 				rf.sizechange(true);
 				// Garland size is fixed to 4.0
-				float cameraZ = 4.0f;
-				viewMatrix = MatrixUtils.lookAt(0, 0, cameraZ, 0, 0, 0, 0, 1, 0);
+				viewMatrix = MatrixUtils.lookAt(0, 0, CAMERA_Z, 0, 0, 0, 0, 1, 0);
 			}
 		}
 		
 		@Override
 		public void onSurfaceCreated(javax.microedition.khronos.opengles.GL10 gl, javax.microedition.khronos.egl.EGLConfig arg1) {
-			// Delete old textures if they exist
-			if (textures[0] != 0 || textures[1] != 0) {
-				TextureUtils.deleteTextures(textures);
+			onSurfaceCreated(gl, arg1, false);
+		}
+		
+		@Override
+		public void onSurfaceCreated(javax.microedition.khronos.opengles.GL10 gl, javax.microedition.khronos.egl.EGLConfig arg1, boolean contextPreserved) {
+			if (contextPreserved && resourcesReady) {
+				// Textures, programs and VAOs survived; only the surface is new
+				android.util.Log.d("AThingLeftBehindService", "EGL context preserved, skipping resource reload");
+				return;
+			}
+			
+			// Fresh context: nothing the state cache remembers is bound any more,
+			// and geometry of a previous context died with it
+			GLStateCache.current().invalidate();
+			GeometryRegistry.current().invalidate();
+			target.release(false);
+			
+			GLResourcePool pool = GLResourcePool.getInstance();
+			if (resources != null) {
+				// The previous context is gone; drop its references without GL calls
+				resources.close(false);
 			}
+			pool.flushPendingDeletes();
+			resources = pool.openScope();
 			
-			// Load textures using new utility
-			int[] newTextures = TextureUtils.loadTextureWithFlipped(context, R.drawable.gr);
+			// Load textures once per share group; later engines reuse them
+			int[] newTextures = resources.acquire(GARLAND_TEXTURES_KEY, () -> {
+						int texture = TextureUtils.loadTexture(context, GARLAND_TEXTURE_NAME, R.drawable.gr,
+								getGarlandTargetSize(context), GARLAND_TEXTURE_OPAQUE);
+						return texture != 0 ? new int[] { texture } : null;
+					}, GLResourcePool.DELETE_TEXTURES);
 			if (newTextures != null) {
-				textures[0] = newTextures[0]; // Original texture
-				textures[1] = newTextures[1]; // Flipped texture
-				android.util.Log.d("AThingLeftBehindService", "Textures loaded: " + textures[0] + ", " + textures[1]);
+				textures = newTextures;
+				android.util.Log.d("AThingLeftBehindService", "Textures loaded: " + textures[0]);
 			} else {
 				android.util.Log.e("AThingLeftBehindService", "Failed to load textures!");
 			}
@@ -169,11 +383,35 @@ public class AThingLeftBehindService extends GLWallpaperServiceES32{
 			// Set background color
 			GLES32.glClearColor(0, 0, 0, 0);
 			
+			// Shader sources are read in the background since onCreateEngine()
+			AssetPreloader.getInstance().awaitShaders();
+			
 			// Initialize all rendering objects
-			bgy.initGL();
-			cgy.initGL();
-			lf.initGL();
-			rf.initGL();
+			garlands.setMesh(getGarlandMesh(context));
+			garlands.initGL(resources);
+			lf.initGL(resources);
+			rf.initGL(resources);
+			fused.initGL(resources);
+			
+			resourcesReady = true;
+		}
+		
+		@Override
+		public void onContextDestroying(boolean contextCurrent) {
+			if (contextCurrent) {
+				garlands.cleanup();
+				lf.cleanup();
+				rf.cleanup();
+				fused.cleanup();
+			}
+			target.release(contextCurrent);
+			if (resources != null) {
+				resources.close(contextCurrent);
+				resources = null;
+			}
+			GLStateCache.current().invalidate();
+			GeometryRegistry.current().invalidate();
+			resourcesReady = false;
 		}
 	}
 	
@@ -181,6 +419,15 @@ public class AThingLeftBehindService extends GLWallpaperServiceES32{
 	public Engine onCreateEngine()
 	{
 		context = this;
+		// Read shaders, the garland texture and its mesh while EGL comes up
+		AssetPreloader.getInstance().preloadShaders(this);
+		if (!GLResourcePool.getInstance().contains(GARLAND_TEXTURES_KEY)) {
+			TextureUtils.preloadTexture(this, GARLAND_TEXTURE_NAME, R.drawable.gr,
+					getGarlandTargetSize(this), GARLAND_TEXTURE_OPAQUE);
+		}
+		if (!garlandMeshLoaded) {
+			AssetPreloader.getInstance().preloadMesh(this, R.drawable.gr);
+		}
 		return new AThingLeftBehindEngine();
 	}
 	
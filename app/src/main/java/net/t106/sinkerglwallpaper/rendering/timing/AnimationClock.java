@@ -0,0 +1,57 @@
+package net.t106.sinkerglwallpaper.rendering.timing;
+
+/**
+ * Monotonic animation clock shared by all rendering objects
+ * Animation phase is derived from elapsed time instead of frame count, so
+ * frame-rate caps, dropped frames and pauses do not change the animation
+ */
+public class AnimationClock {
+    
+    /**
+     * Frame rate the legacy per-frame animation constants were tuned for
+     */
+    public static final float REFERENCE_FRAME_RATE = 60.0f;
+    
+    // Fixed for the lifetime of the process so resumed wallpapers keep their phase
+    private static final long ORIGIN_NANOS = System.nanoTime();
+    
+    private static volatile long frameTimeNanos = ORIGIN_NANOS;
+    
+    /**
+     * Samples the clock for a new frame
+     * @return The new frame time in nanoseconds (System.nanoTime() base)
+     */
+    public static long tick() {
+        long now = System.nanoTime();
+        frameTimeNanos = now;
+        return now;
+    }
+    
+    /**
+     * Gets the time sampled by the last tick()
+     * @return Frame time in nanoseconds (System.nanoTime() base)
+     */
+    public static long getFrameTimeNanos() {
+        return frameTimeNanos;
+    }
+    
+    /**
+     * Gets the time elapsed between clock creation and the last tick()
+     * @return Elapsed time in seconds
+     */
+    public static double getElapsedSeconds() {
+        return (frameTimeNanos - ORIGIN_NANOS) / 1e9;
+    }
+    
+    /**
+     * Computes the current angle of a constant-speed rotation
+     * @param degreesPerTick Degrees advanced per reference frame
+     * @param ticksPerCycle Reference frames after which the rotation wraps
+     * @return Rotation angle in degrees
+     */
+    public static float rotationAngle(float degreesPerTick, int ticksPerCycle) {
+        // Keep the modulo in double precision; float would lose sub-degree accuracy after a few hours
+        double ticks = getElapsedSeconds() * REFERENCE_FRAME_RATE;
+        return (float) (degreesPerTick * (ticks % ticksPerCycle));
+    }
+}
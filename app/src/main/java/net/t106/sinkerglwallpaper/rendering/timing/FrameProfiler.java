@@ -0,0 +1,234 @@
+package net.t106.sinkerglwallpaper.rendering.timing;
+
+import android.util.Log;
+import java.util.Arrays;
+import java.util.Locale;
+import net.t106.sinkerglwallpaper.opengl.shaders.ProgramBinaryCache;
+import net.t106.sinkerglwallpaper.opengl.utils.GeometryRegistry;
+import net.t106.sinkerglwallpaper.opengl.utils.TextureUtils;
+
+/**
+ * CPU time profiler for the phases of a rendered frame
+ * Every renderer owns one, so the preview and the home screen wallpaper never
+ * mix their samples; the home screen engine publishes its profiler through
+ * setHomeScreen() for the settings screen to report.
+ * Samples go into fixed-size primitive ring buffers (recent window, exact
+ * percentiles) and log2 histograms (since reset, bucketed percentiles).
+ * Recording never allocates; only the summary and dump paths do.
+ */
+public class FrameProfiler {
+    private static final String TAG = "FrameProfiler";
+
+    // Phases of one frame
+    public static final int PHASE_UPDATE = 0;
+    public static final int PHASE_DRAW_GARLANDS = 1;
+    public static final int PHASE_DRAW_LEFT_FILTER = 2;
+    public static final int PHASE_DRAW_RIGHT_FILTER = 3;
+    public static final int PHASE_SWAP = 4;
+    public static final int PHASE_FRAME = 5;
+    public static final int PHASE_DRAW_FUSED = 6;
+    public static final int PHASE_COUNT = 7;
+
+    private static final String[] PHASE_NAMES = {
+        "update", "draw garlands", "draw left", "draw right", "swap", "frame", "draw fused"
+    };
+
+    // Samples kept per phase for the recent window
+    private static final int RING_SIZE = 512;
+
+    // Bucket i holds samples of [2^(i-1), 2^i) microseconds; bucket 0 holds < 1 us
+    private static final int BUCKET_COUNT = 24;
+
+    // Profiler of the running home screen (non-preview) engine, or null
+    private static volatile FrameProfiler homeScreen;
+
+    private final long[][] ring = new long[PHASE_COUNT][RING_SIZE];
+    private final int[] ringCount = new int[PHASE_COUNT];
+    private final int[] ringHead = new int[PHASE_COUNT];
+    private final long[][] histogram = new long[PHASE_COUNT][BUCKET_COUNT];
+    private final long[] histogramTotal = new long[PHASE_COUNT];
+
+    // Scratch for percentile queries, guarded by this
+    private final long[] sorted = new long[RING_SIZE];
+
+    // GL state calls of the last frame and since reset (see GLStateCache)
+    private int lastIssuedStateCalls;
+    private int lastSkippedStateCalls;
+    private float lastRenderScale = 1f;
+    private long totalIssuedStateCalls;
+    private long totalSkippedStateCalls;
+
+    /**
+     * Gets the profiler of the home screen wallpaper
+     * @return Profiler of the running non-preview engine, or null if there is none
+     */
+    public static FrameProfiler getHomeScreen() {
+        return homeScreen;
+    }
+
+    /**
+     * Publishes the profiler of the home screen wallpaper; called by the non-preview engine
+     */
+    public static synchronized void setHomeScreen(FrameProfiler profiler) {
+        homeScreen = profiler;
+    }
+
+    /**
+     * Withdraws a profiler published by setHomeScreen() unless another engine replaced it since
+     */
+    public static synchronized void clearHomeScreen(FrameProfiler profiler) {
+        if (homeScreen == profiler) {
+            homeScreen = null;
+        }
+    }
+
+    /**
+     * Records one sample; safe to call from every GL thread
+     * @param phase One of the PHASE_ constants
+     * @param nanos Duration in nanoseconds
+     */
+    public synchronized void record(int phase, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        int head = ringHead[phase];
+        ring[phase][head] = nanos;
+        ringHead[phase] = (head + 1) % RING_SIZE;
+        if (ringCount[phase] < RING_SIZE) {
+            ringCount[phase]++;
+        }
+
+        long micros = nanos / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+        histogram[phase][bucket]++;
+        histogramTotal[phase]++;
+    }
+
+    /**
+     * Records how many GL state calls a frame issued and how many were redundant
+     * @param issued Calls sent to the driver
+     * @param skipped Calls filtered out as no-ops
+     */
+    public synchronized void recordStateCalls(int issued, int skipped) {
+        lastIssuedStateCalls = issued;
+        lastSkippedStateCalls = skipped;
+        totalIssuedStateCalls += issued;
+        totalSkippedStateCalls += skipped;
+    }
+
+    /**
+     * Records the resolution scale a frame was rendered at
+     * @param scale Fraction of the surface size per axis
+     */
+    public synchronized void recordRenderScale(float scale) {
+        lastRenderScale = scale;
+    }
+
+    /**
+     * Drops all samples
+     */
+    public synchronized void reset() {
+        lastIssuedStateCalls = 0;
+        lastSkippedStateCalls = 0;
+        totalIssuedStateCalls = 0;
+        totalSkippedStateCalls = 0;
+        Arrays.fill(ringCount, 0);
+        Arrays.fill(ringHead, 0);
+        Arrays.fill(histogramTotal, 0);
+        for (long[] buckets : histogram) {
+            Arrays.fill(buckets, 0);
+        }
+    }
+
+    /**
+     * Gets a percentile of the recent samples of a phase
+     * @param phase One of the PHASE_ constants
+     * @param percentile Percentile in [0, 100]
+     * @return Duration in nanoseconds, or -1 if the phase has no samples
+     */
+    public synchronized long getPercentile(int phase, float percentile) {
+        int count = ringCount[phase];
+        if (count == 0) {
+            return -1;
+        }
+        System.arraycopy(ring[phase], 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int index = (int) Math.ceil(percentile / 100f * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    /**
+     * Gets a percentile of all samples since reset from the histogram
+     * @param phase One of the PHASE_ constants
+     * @param percentile Percentile in [0, 100]
+     * @return Upper bound of the matching bucket in nanoseconds, or -1 if the phase has no samples
+     */
+    public synchronized long getHistogramPercentile(int phase, float percentile) {
+        long total = histogramTotal[phase];
+        if (total == 0) {
+            return -1;
+        }
+        long target = (long) Math.ceil(percentile / 100f * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += histogram[phase][i];
+            if (seen >= target) {
+                return (1L << i) * 1000;
+            }
+        }
+        return (1L << (BUCKET_COUNT - 1)) * 1000;
+    }
+
+    /**
+     * Builds a short p50/p95/p99 summary of the whole frame and the swap
+     * @return Human-readable summary in milliseconds
+     */
+    public String getSummary() {
+        if (getPercentile(PHASE_FRAME, 50) < 0) {
+            return "No frames recorded";
+        }
+        return formatPhase(PHASE_FRAME) + "\n" + formatPhase(PHASE_SWAP) + "\n" + formatStateCalls();
+    }
+
+    /**
+     * Writes the percentiles and histograms of every phase to logcat
+     */
+    public synchronized void dumpToLog() {
+        Log.i(TAG, "Frame profile (recent " + RING_SIZE + " samples, histogram since reset)");
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            Log.i(TAG, formatPhase(phase));
+            StringBuilder buckets = new StringBuilder("  histogram <us:count>");
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (histogram[phase][i] > 0) {
+                    buckets.append(' ').append(1L << i).append(':').append(histogram[phase][i]);
+                }
+            }
+            Log.i(TAG, buckets.toString());
+        }
+        Log.i(TAG, formatStateCalls() + String.format(Locale.US, " (since reset: %d issued / %d skipped)",
+                totalIssuedStateCalls, totalSkippedStateCalls));
+        Log.i(TAG, String.format(Locale.US, "Render scale last frame: %.0f%%", lastRenderScale * 100));
+        Log.i(TAG, "Live geometry buffers: " + GeometryRegistry.getTotalLiveBufferBytes() + " bytes");
+        ProgramBinaryCache binaries = ProgramBinaryCache.getInstance();
+        Log.i(TAG, "Program binary cache: " + binaries.getHitCount() + " hits / " + binaries.getMissCount()
+                + " misses (" + binaries.getRejectedCount() + " rejected)");
+        Log.i(TAG, "Resident textures: " + TextureUtils.getResidentBytes() + " bytes");
+        for (String texture : TextureUtils.getResidentTextures()) {
+            Log.i(TAG, "  " + texture);
+        }
+    }
+
+    private synchronized String formatStateCalls() {
+        return "GL state calls last frame: " + lastIssuedStateCalls + " issued / "
+                + lastSkippedStateCalls + " skipped";
+    }
+
+    private synchronized String formatPhase(int phase) {
+        return String.format(Locale.US, "%s: p50 %.2f / p95 %.2f / p99 %.2f ms (n=%d)",
+                PHASE_NAMES[phase],
+                getPercentile(phase, 50) / 1e6,
+                getPercentile(phase, 95) / 1e6,
+                getPercentile(phase, 99) / 1e6,
+                histogramTotal[phase]);
+    }
+}
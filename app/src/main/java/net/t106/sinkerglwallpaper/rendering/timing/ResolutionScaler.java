@@ -0,0 +1,99 @@
+package net.t106.sinkerglwallpaper.rendering.timing;
+
+/**
+ * Picks the render resolution from measured frame times
+ * Frame times (draw plus swap, as reported by the GL thread) are averaged
+ * over a window and compared with the frame budget. When frames come close
+ * to the budget the scale drops, sized so the pixel count shrinks with the
+ * load; when there is plenty of headroom it creeps back up one step per
+ * window. The scale never goes below the user's floor; a floor of 1 turns
+ * scaling off.
+ *
+ * onFrame() is called on the GL thread; the setters may be called from any thread.
+ */
+public class ResolutionScaler {
+    // Frames averaged per decision
+    private static final int WINDOW_FRAMES = 30;
+
+    // Budget fractions: above HIGH_LOAD scale down towards TARGET_LOAD, below LOW_LOAD scale up
+    private static final float HIGH_LOAD = 0.85f;
+    private static final float TARGET_LOAD = 0.7f;
+    private static final float LOW_LOAD = 0.5f;
+
+    // Scales are multiples of STEP, so small jitter does not reallocate the target
+    private static final float STEP = 0.05f;
+
+    private volatile float floor = 1f;
+    private volatile long budgetNanos;
+
+    private float scale = 1f;
+    private long windowNanos;
+    private int windowFrames;
+
+    /**
+     * Sets the lowest scale allowed
+     * @param floor Fraction of the surface size per axis, 0 to 1; 1 disables scaling
+     */
+    public void setFloor(float floor) {
+        this.floor = Math.max(STEP, Math.min(1f, floor));
+    }
+
+    /**
+     * Sets the time available per frame
+     * @param framesPerSecond Target frame rate; 0 or less stops adjusting
+     */
+    public void setFrameRate(float framesPerSecond) {
+        budgetNanos = framesPerSecond > 0f ? (long) (1e9 / framesPerSecond) : 0;
+    }
+
+    /**
+     * Checks whether frames may be rendered below the surface resolution
+     */
+    public boolean isEnabled() {
+        return floor < 1f;
+    }
+
+    /**
+     * Gets the current scale per axis, at least the floor
+     */
+    public float getScale() {
+        float current = Math.max(scale, floor);
+        return isEnabled() ? current : 1f;
+    }
+
+    /**
+     * Feeds the time of one frame
+     * @param frameNanos Draw plus swap time of the frame
+     */
+    public void onFrame(long frameNanos) {
+        long budget = budgetNanos;
+        if (!isEnabled() || budget <= 0) {
+            return;
+        }
+        windowNanos += frameNanos;
+        if (++windowFrames < WINDOW_FRAMES) {
+            return;
+        }
+        float load = (float) windowNanos / windowFrames / budget;
+        windowNanos = 0;
+        windowFrames = 0;
+
+        float current = getScale();
+        if (load > HIGH_LOAD) {
+            // Pixel cost goes with the area, i.e. the square of the scale
+            float wanted = current * (float) Math.sqrt(TARGET_LOAD / load);
+            scale = Math.max(floor, Math.min(current - STEP, (float) Math.floor(wanted / STEP) * STEP));
+        } else if (load < LOW_LOAD) {
+            scale = Math.min(1f, current + STEP);
+        }
+    }
+
+    /**
+     * Returns to full resolution, e.g. after the surface changed
+     */
+    public void reset() {
+        scale = 1f;
+        windowNanos = 0;
+        windowFrames = 0;
+    }
+}
\ No newline at end of file
@@ -4,6 +4,7 @@ import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.preference.PreferenceFragmentCompat;
 import net.t106.sinkerglwallpaper.R;
+import net.t106.sinkerglwallpaper.rendering.timing.FrameProfiler;
 import net.t106.sinkerglwallpaper.ui.preferences.TextBoxPreference;
 
 public class SettingsActivity extends AppCompatActivity {
@@ -27,9 +28,37 @@ public class SettingsActivity extends AppCompatActivity {
 	}
 	
 	public static class SettingsFragment extends PreferenceFragmentCompat {
+		private static final String PREF_FRAME_PROFILE = "frame_profile";
+		
 		@Override
 		public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
 			setPreferencesFromResource(R.xml.pref, rootKey);
+			
+			androidx.preference.Preference profile = findPreference(PREF_FRAME_PROFILE);
+			if (profile != null) {
+				profile.setOnPreferenceClickListener(preference -> {
+					FrameProfiler profiler = FrameProfiler.getHomeScreen();
+					if (profiler != null) {
+						profiler.dumpToLog();
+					}
+					updateFrameProfileSummary();
+					return true;
+				});
+			}
+		}
+		
+		@Override
+		public void onResume() {
+			super.onResume();
+			updateFrameProfileSummary();
+		}
+		
+		private void updateFrameProfileSummary() {
+			androidx.preference.Preference profile = findPreference(PREF_FRAME_PROFILE);
+			if (profile != null) {
+				FrameProfiler profiler = FrameProfiler.getHomeScreen();
+				profile.setSummary(profiler != null ? profiler.getSummary() : getString(R.string.frame_profile_no_wallpaper));
+			}
 		}
 		
 		@Override
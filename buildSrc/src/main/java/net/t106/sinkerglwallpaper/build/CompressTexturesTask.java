@@ -0,0 +1,243 @@
+package net.t106.sinkerglwallpaper.build;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Converts PNG textures into GPU-compressed KTX assets
+ * For every source image, textures/NAME.etc2.ktx is always written (ETC2 is
+ * mandatory on OpenGL ES 3) with a full mip chain, since compressed textures
+ * cannot use glGenerateMipmap. If an astcenc executable is configured,
+ * textures/NAME.astc.ktx is written as well, with astcenc run on every level
+ * of the same chain. At runtime TextureUtils picks the best format the device
+ * supports and falls back to the PNG resource.
+ *
+ * Images are premultiplied and luminance-keyed before encoding, like
+ * TextureUtils does for the PNG fallback: texels darker than luminanceKey
+ * become transparent black, and the mip chain is built from the keyed image. Alpha is only
+ * stored for sources that have it; opaque ones keep just the black.
+ */
+public abstract class CompressTexturesTask extends DefaultTask {
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getSources();
+
+    /**
+     * Path of the astcenc executable; ASTC output is skipped if unset
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getAstcenc();
+
+    /**
+     * ASTC block footprint, e.g. "6x6" (3.56 bits per pixel)
+     */
+    @Input
+    public abstract Property<String> getAstcBlockSize();
+
+    /**
+     * Lowest luminance (0..1) kept by the luminance key; must match TextureUtils.LUMINANCE_KEY
+     */
+    @Input
+    public abstract Property<Float> getLuminanceKey();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDir();
+
+    // Lowest alpha kept, TextureUtils.ALPHA_KEY
+    private static final float ALPHA_KEY = 0.01f;
+
+    // Block footprints of GL_COMPRESSED_RGBA_ASTC_4x4_KHR (0x93B0) onwards, in format order
+    private static final String[] ASTC_BLOCK_SIZES = {
+        "4x4", "5x4", "5x5", "6x5", "6x6", "8x5", "8x6", "8x8", "10x5", "10x6", "10x8", "10x10", "12x10", "12x12"
+    };
+    private static final int GL_COMPRESSED_RGBA_ASTC_4x4_KHR = 0x93B0;
+
+    // Size of the header astcenc writes in front of the blocks of a .astc file
+    private static final int ASTC_HEADER_SIZE = 16;
+
+    public CompressTexturesTask() {
+        getAstcBlockSize().convention("6x6");
+        getLuminanceKey().convention(0.1f);
+    }
+
+    @TaskAction
+    public void compress() throws IOException, InterruptedException {
+        File directory = new File(getOutputDir().get().getAsFile(), "textures");
+        File[] stale = directory.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new GradleException("Cannot create " + directory);
+        }
+
+        for (File source : getSources()) {
+            String name = source.getName().replaceFirst("\\.png$", "");
+            BufferedImage image = ImageIO.read(source);
+            if (image == null) {
+                throw new GradleException("Cannot read " + source);
+            }
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+            // Rows are stored top first, matching GLUtils.texImage2D for the PNG path
+            boolean alpha = !Etc2Encoder.isOpaque(argb);
+            applyLuminanceKey(argb, getLuminanceKey().get());
+            List<int[]> keyedLevels = new ArrayList<>();
+            List<byte[]> levels = new ArrayList<>();
+            int total = 0;
+            int levelWidth = width;
+            int levelHeight = height;
+            while (true) {
+                keyedLevels.add(argb);
+                byte[] level = Etc2Encoder.encode(argb, levelWidth, levelHeight, alpha);
+                levels.add(level);
+                total += level.length;
+                if (levelWidth == 1 && levelHeight == 1) {
+                    break;
+                }
+                int nextWidth = Math.max(1, levelWidth / 2);
+                int nextHeight = Math.max(1, levelHeight / 2);
+                argb = downsample(argb, levelWidth, levelHeight, nextWidth, nextHeight);
+                levelWidth = nextWidth;
+                levelHeight = nextHeight;
+            }
+            KtxWriter.write(new File(directory, name + ".etc2.ktx"),
+                    alpha ? Etc2Encoder.GL_COMPRESSED_RGBA8_ETC2_EAC : Etc2Encoder.GL_COMPRESSED_RGB8_ETC2,
+                    alpha ? KtxWriter.GL_RGBA : KtxWriter.GL_RGB, width, height, levels.toArray(new byte[0][]));
+            getLogger().info("{}: ETC2 {} levels, {} bytes (RGBA8888 level 0: {} bytes)",
+                    name, levels.size(), total, width * height * 4);
+
+            if (getAstcenc().isPresent() && !getAstcenc().get().isEmpty()) {
+                compressAstc(name, keyedLevels, width, height, new File(directory, name + ".astc.ktx"));
+            }
+        }
+    }
+
+    /**
+     * Encodes every level of a keyed mip chain with astcenc and writes them as one KTX
+     * astcenc itself only produces a single level, so each one goes through a
+     * temporary PNG. ASTC is optional: if any level fails, no file is written.
+     */
+    private void compressAstc(String name, List<int[]> keyedLevels, int width, int height, File output)
+            throws IOException, InterruptedException {
+        int format = Arrays.asList(ASTC_BLOCK_SIZES).indexOf(getAstcBlockSize().get());
+        if (format < 0) {
+            throw new GradleException("Unsupported ASTC block size " + getAstcBlockSize().get());
+        }
+        byte[][] levels = new byte[keyedLevels.size()][];
+        int total = 0;
+        for (int level = 0; level < levels.length; level++) {
+            int levelWidth = Math.max(1, width >> level);
+            int levelHeight = Math.max(1, height >> level);
+            BufferedImage levelImage = new BufferedImage(levelWidth, levelHeight, BufferedImage.TYPE_INT_ARGB);
+            levelImage.setRGB(0, 0, levelWidth, levelHeight, keyedLevels.get(level), 0, levelWidth);
+            File levelSource = new File(getTemporaryDir(), name + "." + level + ".png");
+            File levelOutput = new File(getTemporaryDir(), name + "." + level + ".astc");
+            ImageIO.write(levelImage, "png", levelSource);
+            if (!runAstcenc(levelSource, levelOutput)) {
+                return;
+            }
+            byte[] file = Files.readAllBytes(levelOutput.toPath());
+            levels[level] = Arrays.copyOfRange(file, ASTC_HEADER_SIZE, file.length);
+            total += levels[level].length;
+        }
+        KtxWriter.write(output, GL_COMPRESSED_RGBA_ASTC_4x4_KHR + format, KtxWriter.GL_RGBA,
+                width, height, levels);
+        getLogger().info("{}: ASTC {} {} levels, {} bytes", name, getAstcBlockSize().get(), levels.length, total);
+    }
+
+    /**
+     * Premultiplies an image and replaces texels below the luminance or alpha key with transparent black
+     * The luminance is that of the premultiplied color, as in TextureImage.applyLuminanceKey().
+     */
+    private static void applyLuminanceKey(int[] argb, float luminanceKey) {
+        for (int i = 0; i < argb.length; i++) {
+            int alpha = argb[i] >>> 24;
+            int red = ((argb[i] >> 16) & 0xFF) * alpha / 255;
+            int green = ((argb[i] >> 8) & 0xFF) * alpha / 255;
+            int blue = (argb[i] & 0xFF) * alpha / 255;
+            float luminance = (0.299f * red + 0.587f * green + 0.114f * blue) / 255f;
+            if (alpha / 255f < ALPHA_KEY || luminance < luminanceKey) {
+                argb[i] = 0;
+            } else {
+                argb[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            }
+        }
+    }
+
+    /**
+     * Box-filters an image to the next mip level
+     */
+    private static int[] downsample(int[] argb, int width, int height, int newWidth, int newHeight) {
+        int[] out = new int[newWidth * newHeight];
+        for (int y = 0; y < newHeight; y++) {
+            for (int x = 0; x < newWidth; x++) {
+                int[] sum = new int[4];
+                int count = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    for (int dx = 0; dx < 2; dx++) {
+                        int sx = Math.min(x * 2 + dx, width - 1);
+                        int sy = Math.min(y * 2 + dy, height - 1);
+                        int pixel = argb[sy * width + sx];
+                        for (int c = 0; c < 4; c++) {
+                            sum[c] += (pixel >>> (8 * c)) & 0xFF;
+                        }
+                        count++;
+                    }
+                }
+                int pixel = 0;
+                for (int c = 0; c < 4; c++) {
+                    pixel |= ((sum[c] + count / 2) / count) << (8 * c);
+                }
+                out[y * newWidth + x] = pixel;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return False if astcenc failed, in which case the ASTC asset is skipped
+     */
+    private boolean runAstcenc(File source, File output) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(getAstcenc().get());
+        command.add("-cl");  // LDR, linear
+        command.add(source.getAbsolutePath());
+        command.add(output.getAbsolutePath());
+        command.add(getAstcBlockSize().get());
+        command.add("-medium");
+        command.add("-silent");
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            // ASTC is optional; the ETC2 asset still covers every device
+            getLogger().warn("astcenc failed with exit code {} for {}, skipping ASTC", exitCode, source.getName());
+            return false;
+        }
+        return true;
+    }
+}
\ No newline at end of file
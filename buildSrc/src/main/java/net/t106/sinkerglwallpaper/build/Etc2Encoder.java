@@ -0,0 +1,317 @@
+package net.t106.sinkerglwallpaper.build;
+
+/**
+ * Minimal ETC2 encoder for build-time texture conversion
+ * Color blocks use the ETC1-compatible individual and differential modes
+ * (every such block is a valid ETC2 block); alpha uses EAC. Blocks are
+ * searched exhaustively over both sub-block orientations and all modifier
+ * tables, which is plenty for a handful of textures at build time.
+ */
+public final class Etc2Encoder {
+
+    // GL internal formats
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+
+    private static final int[][] COLOR_MODIFIERS = {
+        { 2, 8 }, { 5, 17 }, { 9, 29 }, { 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 }
+    };
+
+    private static final int[][] ALPHA_MODIFIERS = {
+        { -3, -6, -9, -15, 2, 5, 8, 14 }, { -3, -7, -10, -13, 2, 6, 9, 12 },
+        { -2, -5, -8, -13, 1, 4, 7, 12 }, { -2, -4, -6, -13, 1, 3, 5, 12 },
+        { -3, -6, -8, -12, 2, 5, 7, 11 }, { -3, -7, -9, -11, 2, 6, 8, 10 },
+        { -4, -7, -8, -11, 3, 6, 7, 10 }, { -3, -5, -8, -11, 2, 4, 7, 10 },
+        { -2, -6, -8, -10, 1, 5, 7, 9 }, { -2, -5, -8, -10, 1, 4, 7, 9 },
+        { -2, -4, -8, -10, 1, 3, 7, 9 }, { -2, -5, -7, -10, 1, 4, 6, 9 },
+        { -3, -4, -7, -10, 2, 3, 6, 9 }, { -1, -2, -3, -10, 0, 1, 2, 9 },
+        { -4, -6, -8, -9, 3, 5, 7, 8 }, { -3, -5, -7, -9, 2, 4, 6, 8 }
+    };
+
+    // Base color refinement passes per block orientation
+    private static final int REFINE_PASSES = 3;
+
+    private Etc2Encoder() {
+    }
+
+    /**
+     * Checks whether every pixel is fully opaque
+     */
+    public static boolean isOpaque(int[] argb) {
+        for (int pixel : argb) {
+            if ((pixel >>> 24) != 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes an image
+     * @param argb Pixels, row by row from the top, 0xAARRGGBB
+     * @param width Image width
+     * @param height Image height
+     * @param withAlpha True for RGBA8_ETC2_EAC (16 bytes per block), false for RGB8_ETC2 (8 bytes)
+     * @return Blocks in row-major order
+     */
+    public static byte[] encode(int[] argb, int width, int height, boolean withAlpha) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        int blockBytes = withAlpha ? 16 : 8;
+        byte[] out = new byte[blocksX * blocksY * blockBytes];
+        int[] block = new int[16];
+        int offset = 0;
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                // Pixel i of a block is at x = i / 4, y = i % 4; edges are clamped
+                for (int i = 0; i < 16; i++) {
+                    int x = Math.min(bx * 4 + i / 4, width - 1);
+                    int y = Math.min(by * 4 + i % 4, height - 1);
+                    block[i] = argb[y * width + x];
+                }
+                if (withAlpha) {
+                    putLong(out, offset, encodeAlphaBlock(block));
+                    offset += 8;
+                }
+                putLong(out, offset, encodeColorBlock(block));
+                offset += 8;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Gets the size of one mip level in bytes
+     */
+    public static int getEncodedSize(int width, int height, boolean withAlpha) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * (withAlpha ? 16 : 8);
+    }
+
+    private static long encodeColorBlock(int[] block) {
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        int[] modifiers = new int[16];
+        for (int flip = 0; flip < 2; flip++) {
+            int[][] targets = new int[2][3];
+            for (int sub = 0; sub < 2; sub++) {
+                targets[sub] = averageColor(block, flip, sub, null);
+            }
+            // Start from the sub-block averages, then re-center the bases on the
+            // colors the chosen modifiers actually need
+            for (int pass = 0; pass < REFINE_PASSES; pass++) {
+                for (int differential = 0; differential < 2; differential++) {
+                    int[][] bases = quantizeBases(targets, differential == 1);
+                    if (bases == null) {
+                        continue;  // delta too large for differential mode
+                    }
+                    long[] candidate = encodeWithBases(block, flip, bases, differential == 1, null);
+                    if (candidate[1] < bestError) {
+                        bestError = candidate[1];
+                        best = candidate[0] | packBases(bases, differential == 1) | ((long) flip << 32);
+                    }
+                }
+                int[][] bases = quantizeBases(targets, false);
+                encodeWithBases(block, flip, bases, false, modifiers);
+                for (int sub = 0; sub < 2; sub++) {
+                    targets[sub] = averageColor(block, flip, sub, modifiers);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Averages the colors of a sub-block, minus each pixel's modifier if given
+     */
+    private static int[] averageColor(int[] block, int flip, int sub, int[] modifiers) {
+        int[] sum = new int[3];
+        for (int i = 0; i < 16; i++) {
+            if (subBlock(i, flip) == sub) {
+                int modifier = modifiers != null ? modifiers[i] : 0;
+                for (int c = 0; c < 3; c++) {
+                    sum[c] += ((block[i] >> (16 - 8 * c)) & 0xFF) - modifier;
+                }
+            }
+        }
+        int[] average = new int[3];
+        for (int c = 0; c < 3; c++) {
+            average[c] = clamp(Math.round(sum[c] / 8.0f));
+        }
+        return average;
+    }
+
+    /**
+     * Quantizes two 8-bit colors to 4-bit (individual) or 5-bit (differential) bases
+     * @return Quantized bases, or null if the differential delta does not fit in 3 bits
+     */
+    private static int[][] quantizeBases(int[][] colors, boolean differential) {
+        int max = differential ? 31 : 15;
+        int[][] bases = new int[2][3];
+        for (int sub = 0; sub < 2; sub++) {
+            for (int c = 0; c < 3; c++) {
+                bases[sub][c] = (colors[sub][c] * max + 127) / 255;
+            }
+        }
+        if (differential) {
+            for (int c = 0; c < 3; c++) {
+                int delta = bases[1][c] - bases[0][c];
+                if (delta < -4 || delta > 3) {
+                    return null;
+                }
+            }
+        }
+        return bases;
+    }
+
+    private static long packBases(int[][] bases, boolean differential) {
+        long bits = 0;
+        for (int c = 0; c < 3; c++) {
+            int shift = 56 - 8 * c;
+            if (differential) {
+                bits |= ((long) bases[0][c] << (shift + 3)) | ((long) ((bases[1][c] - bases[0][c]) & 7) << shift);
+            } else {
+                bits |= ((long) bases[0][c] << (shift + 4)) | ((long) bases[1][c] << shift);
+            }
+        }
+        return differential ? bits | (1L << 33) : bits;
+    }
+
+    private static int expand(int base, boolean differential) {
+        return differential ? (base << 3) | (base >> 2) : base * 17;
+    }
+
+    /**
+     * Picks the best table per sub-block for fixed base colors
+     * @param modifiers Receives the modifier chosen for each pixel, or null
+     * @return { table and pixel index bits, squared error }
+     */
+    private static long[] encodeWithBases(int[] block, int flip, int[][] bases, boolean differential,
+                                          int[] modifiers) {
+        long bits = 0;
+        long totalError = 0;
+        int[] chosen = new int[16];
+        int[] bestChosen = new int[16];
+        for (int sub = 0; sub < 2; sub++) {
+            int[] base = new int[3];
+            for (int c = 0; c < 3; c++) {
+                base[c] = expand(bases[sub][c], differential);
+            }
+            long bestError = Long.MAX_VALUE;
+            int bestTable = 0;
+            long bestIndices = 0;
+            for (int table = 0; table < 8; table++) {
+                long error = 0;
+                long indices = 0;
+                for (int i = 0; i < 16; i++) {
+                    if (subBlock(i, flip) != sub) {
+                        continue;
+                    }
+                    int bestCode = 0;
+                    int bestPixelError = Integer.MAX_VALUE;
+                    // Index codes 0-3: +small, +large, -small, -large
+                    for (int code = 0; code < 4; code++) {
+                        int modifier = COLOR_MODIFIERS[table][code & 1];
+                        if ((code & 2) != 0) {
+                            modifier = -modifier;
+                        }
+                        int pixelError = 0;
+                        for (int c = 0; c < 3; c++) {
+                            int diff = clamp(base[c] + modifier) - ((block[i] >> (16 - 8 * c)) & 0xFF);
+                            pixelError += diff * diff;
+                        }
+                        if (pixelError < bestPixelError) {
+                            bestPixelError = pixelError;
+                            bestCode = code;
+                            chosen[i] = modifier;
+                        }
+                    }
+                    error += bestPixelError;
+                    indices |= ((long) (bestCode >> 1) << (16 + i)) | ((long) (bestCode & 1) << i);
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    bestTable = table;
+                    bestIndices = indices;
+                    System.arraycopy(chosen, 0, bestChosen, 0, 16);
+                }
+            }
+            bits |= bestIndices | ((long) bestTable << (sub == 0 ? 37 : 34));
+            totalError += bestError;
+            if (modifiers != null) {
+                for (int i = 0; i < 16; i++) {
+                    if (subBlock(i, flip) == sub) {
+                        modifiers[i] = bestChosen[i];
+                    }
+                }
+            }
+        }
+        return new long[] { bits, totalError };
+    }
+
+    private static long encodeAlphaBlock(int[] block) {
+        int min = 255;
+        int max = 0;
+        for (int pixel : block) {
+            int alpha = pixel >>> 24;
+            min = Math.min(min, alpha);
+            max = Math.max(max, alpha);
+        }
+        if (min == max) {
+            // Table 13 has a zero modifier at index 4
+            long bits = ((long) min << 56) | (1L << 52) | (13L << 48);
+            for (int i = 0; i < 16; i++) {
+                bits |= 4L << (45 - 3 * i);
+            }
+            return bits;
+        }
+
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        int center = (min + max + 1) / 2;
+        for (int base = Math.max(0, center - 3); base <= Math.min(255, center + 3); base++) {
+            for (int table = 0; table < 16; table++) {
+                int span = ALPHA_MODIFIERS[table][7] - ALPHA_MODIFIERS[table][3];
+                int ideal = Math.max(1, Math.min(15, (max - min + span / 2) / span));
+                for (int multiplier = Math.max(1, ideal - 1); multiplier <= Math.min(15, ideal + 1); multiplier++) {
+                    long error = 0;
+                    long indices = 0;
+                    for (int i = 0; i < 16 && error < bestError; i++) {
+                        int alpha = block[i] >>> 24;
+                        int bestIndex = 0;
+                        int bestPixelError = Integer.MAX_VALUE;
+                        for (int index = 0; index < 8; index++) {
+                            int diff = clamp(base + ALPHA_MODIFIERS[table][index] * multiplier) - alpha;
+                            if (diff * diff < bestPixelError) {
+                                bestPixelError = diff * diff;
+                                bestIndex = index;
+                            }
+                        }
+                        error += bestPixelError;
+                        indices |= (long) bestIndex << (45 - 3 * i);
+                    }
+                    if (error < bestError) {
+                        bestError = error;
+                        best = ((long) base << 56) | ((long) multiplier << 52) | ((long) table << 48) | indices;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int subBlock(int pixel, int flip) {
+        // flip 0: left / right 2x4 halves, flip 1: top / bottom 4x2 halves
+        return flip == 0 ? (pixel / 4 >= 2 ? 1 : 0) : (pixel % 4 >= 2 ? 1 : 0);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static void putLong(byte[] out, int offset, long value) {
+        // Blocks are stored big-endian
+        for (int i = 0; i < 8; i++) {
+            out[offset + i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+}
\ No newline at end of file
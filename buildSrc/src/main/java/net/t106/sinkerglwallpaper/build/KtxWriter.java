@@ -0,0 +1,65 @@
+package net.t106.sinkerglwallpaper.build;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes compressed 2D textures with their mip chains as KTX 1.1 containers
+ * The header is little-endian; the runtime loader is KtxLoader in the app.
+ */
+public final class KtxWriter {
+
+    private static final byte[] IDENTIFIER = {
+        (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+
+    public static final int GL_RGB = 0x1907;
+    public static final int GL_RGBA = 0x1908;
+
+    private KtxWriter() {
+    }
+
+    /**
+     * @param file Output file
+     * @param internalFormat Compressed GL internal format
+     * @param baseInternalFormat GL_RGB or GL_RGBA
+     * @param width Width of level 0 in pixels
+     * @param height Height of level 0 in pixels
+     * @param levels Compressed image data of each mip level, largest first
+     */
+    public static void write(File file, int internalFormat, int baseInternalFormat,
+                             int width, int height, byte[][] levels) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write(IDENTIFIER);
+            int[] header = {
+                0x04030201,          // endianness
+                0,                   // glType (compressed)
+                1,                   // glTypeSize
+                0,                   // glFormat (compressed)
+                internalFormat,
+                baseInternalFormat,
+                width,
+                height,
+                0,                   // pixelDepth
+                0,                   // numberOfArrayElements
+                1,                   // numberOfFaces
+                levels.length,       // numberOfMipmapLevels
+                0                    // bytesOfKeyValueData
+            };
+            for (int value : header) {
+                writeIntLE(out, value);
+            }
+            for (byte[] data : levels) {
+                writeIntLE(out, data.length);
+                out.write(data);
+                // Block sizes are multiples of 8, so no mip padding is needed
+            }
+        }
+    }
+
+    private static void writeIntLE(DataOutputStream out, int value) throws IOException {
+        out.writeInt(Integer.reverseBytes(value));
+    }
+}
\ No newline at end of file